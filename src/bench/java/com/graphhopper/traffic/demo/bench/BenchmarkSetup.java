@@ -0,0 +1,197 @@
+package com.graphhopper.traffic.demo.bench;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.traffic.demo.DataUpdater;
+import com.graphhopper.traffic.demo.Mode;
+import com.graphhopper.traffic.demo.RoadData;
+import com.graphhopper.traffic.demo.TrafficGraphHopper;
+import com.graphhopper.traffic.demo.TrafficOverlay;
+import com.graphhopper.traffic.demo.ValueType;
+import com.graphhopper.util.Helper;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Creates the graph and the synthetic feeds for the benchmarks. The graph is imported from a
+ * generated OSM file: a grid of primary roads around Cologne with gridSize x gridSize junctions,
+ * so that no download is necessary.
+ *
+ * @author Peter Karich
+ */
+public class BenchmarkSetup {
+
+    static final double START_LAT = 50.90;
+    static final double START_LON = 6.90;
+    static final double SPACING = 0.002;
+    private final int gridSize;
+    private final File dir;
+
+    public BenchmarkSetup(int gridSize) throws IOException {
+        this.gridSize = gridSize;
+        this.dir = Files.createTempDirectory("traffic-bench").toFile();
+    }
+
+    public TrafficGraphHopper createHopper(TrafficOverlay overlay) throws IOException {
+        File osmFile = getOSMFile();
+        TrafficGraphHopper hopper = new TrafficGraphHopper(overlay);
+        hopper.setDataReaderFile(osmFile.getAbsolutePath());
+        hopper.setGraphHopperLocation(new File(dir, "graph-cache").getAbsolutePath());
+        hopper.setEncodingManager(new EncodingManager("car"));
+        hopper.setCHEnabled(false);
+        hopper.importOrLoad();
+        return hopper;
+    }
+
+    /**
+     * @return the generated OSM file of the grid, it is written on the first call
+     */
+    public File getOSMFile() throws IOException {
+        File osmFile = new File(dir, "grid.osm");
+        if (!osmFile.exists()) {
+            writeGridOSM(osmFile);
+        }
+        return osmFile;
+    }
+
+    /**
+     * @return the temporary directory which is removed by close
+     */
+    public File getDirectory() {
+        return dir;
+    }
+
+    public DataUpdater createUpdater(final GraphHopper hopper, TrafficOverlay overlay) {
+        DataUpdater updater = new DataUpdater(new ReentrantReadWriteLock().writeLock(), overlay);
+        Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(GraphHopper.class).toInstance(hopper);
+            }
+        }).injectMembers(updater);
+        return updater;
+    }
+
+    /**
+     * Creates entries along the grid roads, each covering 1 to 3 blocks. The points are slightly
+     * off the road like real feed geometries.
+     */
+    public RoadData createFeed(int entries, long seed) {
+        Random random = new Random(seed);
+        RoadData data = new RoadData(entries, entries * 4);
+        for (int i = 0; i < entries; i++) {
+            boolean horizontal = random.nextBoolean();
+            int blocks = 1 + random.nextInt(3);
+            int fixed = random.nextInt(gridSize);
+            int from = random.nextInt(gridSize - blocks);
+            boolean reverse = random.nextBoolean();
+            for (int p = 0; p <= blocks; p++) {
+                int moving = reverse ? from + blocks - p : from + p;
+                double jitterLat = (random.nextDouble() - 0.5) * 0.00004;
+                double jitterLon = (random.nextDouble() - 0.5) * 0.00004;
+                if (horizontal) {
+                    data.addPoint(START_LAT + fixed * SPACING + jitterLat, START_LON + moving * SPACING + jitterLon);
+                } else {
+                    data.addPoint(START_LAT + moving * SPACING + jitterLat, START_LON + fixed * SPACING + jitterLon);
+                }
+            }
+            data.addEntry("S" + i, random.nextBoolean() ? 5 : 20, ValueType.SPEED, Mode.REPLACE);
+        }
+        return data;
+    }
+
+    /**
+     * Returns a copy of the specified data where every entry has a different value.
+     */
+    public RoadData changeValues(RoadData data) {
+        RoadData changed = new RoadData(data.size(), data.getPointEnd(data.size() - 1));
+        for (int i = 0; i < data.size(); i++) {
+            for (int p = data.getPointStart(i); p < data.getPointEnd(i); p++) {
+                changed.addPoint(data.getLat(p), data.getLon(p));
+            }
+            changed.addEntry(data.getId(i), 25 - data.getValue(i), data.getValueType(i), data.getMode(i));
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the specified data in the format of the Cologne open traffic feed.
+     */
+    public byte[] toOpenTrafficJson(RoadData data) {
+        StringBuilder sb = new StringBuilder(data.size() * 200);
+        sb.append("{\"displayFieldName\":\"Name\",\"geometryType\":\"esriGeometryPolyline\",\"features\":[");
+        for (int i = 0; i < data.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"attributes\":{\"IDENTIFIER\":\"").append(data.getId(i))
+                    .append("\",\"NAME\":\"synthetic\",\"AUSLASTUNG\":").append(data.getValue(i) < 10 ? 2 : 1)
+                    .append(",\"LINK\":null},\"geometry\":{\"paths\":[[");
+            for (int p = data.getPointStart(i); p < data.getPointEnd(i); p++) {
+                if (p > data.getPointStart(i)) {
+                    sb.append(',');
+                }
+                sb.append('[').append(data.getLon(p)).append(',').append(data.getLat(p)).append(']');
+            }
+            sb.append("]]}}");
+        }
+        sb.append("]}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public double getLat(int row) {
+        return START_LAT + row * SPACING;
+    }
+
+    public double getLon(int column) {
+        return START_LON + column * SPACING;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public void close() {
+        Helper.removeDir(dir);
+    }
+
+    private void writeGridOSM(File file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("<?xml version='1.0' encoding='UTF-8'?>\n<osm version=\"0.6\" generator=\"traffic-demo-benchmark\">\n");
+            for (int row = 0; row < gridSize; row++) {
+                for (int column = 0; column < gridSize; column++) {
+                    writer.write(" <node id=\"" + nodeId(row, column) + "\" version=\"1\" lat=\"" + getLat(row) + "\" lon=\"" + getLon(column) + "\"/>\n");
+                }
+            }
+
+            long wayId = 1;
+            for (int row = 0; row < gridSize; row++) {
+                writer.write(" <way id=\"" + wayId++ + "\" version=\"1\">\n");
+                for (int column = 0; column < gridSize; column++) {
+                    writer.write("  <nd ref=\"" + nodeId(row, column) + "\"/>\n");
+                }
+                writer.write("  <tag k=\"highway\" v=\"primary\"/>\n </way>\n");
+            }
+
+            for (int column = 0; column < gridSize; column++) {
+                writer.write(" <way id=\"" + wayId++ + "\" version=\"1\">\n");
+                for (int row = 0; row < gridSize; row++) {
+                    writer.write("  <nd ref=\"" + nodeId(row, column) + "\"/>\n");
+                }
+                writer.write("  <tag k=\"highway\" v=\"primary\"/>\n </way>\n");
+            }
+            writer.write("</osm>\n");
+        }
+    }
+
+    private long nodeId(int row, int column) {
+        return 1 + row * gridSize + column;
+    }
+}
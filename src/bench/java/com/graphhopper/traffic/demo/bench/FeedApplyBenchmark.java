@@ -0,0 +1,101 @@
+package com.graphhopper.traffic.demo.bench;
+
+import com.graphhopper.traffic.demo.DataUpdater;
+import com.graphhopper.traffic.demo.RoadData;
+import com.graphhopper.traffic.demo.TrafficGraphHopper;
+import com.graphhopper.traffic.demo.TrafficOverlay;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DataUpdater.feed with an empty match cache (matchAndApply) and with all matches cached but
+ * every entry changed (applyCached).
+ *
+ * @author Peter Karich
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FeedApplyBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Feeds {
+
+        @Param({"40"})
+        int gridSize;
+
+        @Param({"1000", "10000"})
+        int entries;
+
+        BenchmarkSetup setup;
+        TrafficGraphHopper hopper;
+        RoadData first;
+        RoadData second;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            setup = new BenchmarkSetup(gridSize);
+            hopper = setup.createHopper(new TrafficOverlay());
+            first = setup.createFeed(entries, 1);
+            second = setup.changeValues(first);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            hopper.close();
+            setup.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ColdUpdater {
+
+        DataUpdater updater;
+
+        @Setup(Level.Invocation)
+        public void setUp(Feeds feeds) {
+            updater = feeds.setup.createUpdater(feeds.hopper, new TrafficOverlay());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WarmUpdater {
+
+        DataUpdater updater;
+        boolean odd;
+
+        @Setup(Level.Trial)
+        public void setUp(Feeds feeds) {
+            updater = feeds.setup.createUpdater(feeds.hopper, new TrafficOverlay());
+            updater.feed(feeds.first);
+        }
+    }
+
+    @Benchmark
+    public DataUpdater matchAndApply(Feeds feeds, ColdUpdater cold) {
+        cold.updater.feed(feeds.first);
+        return cold.updater;
+    }
+
+    @Benchmark
+    public DataUpdater applyCached(Feeds feeds, WarmUpdater warm) {
+        warm.odd = !warm.odd;
+        warm.updater.feed(warm.odd ? feeds.second : feeds.first);
+        return warm.updater;
+    }
+}
@@ -0,0 +1,52 @@
+package com.graphhopper.traffic.demo.bench;
+
+import com.graphhopper.traffic.demo.OpenTrafficParser;
+import com.graphhopper.traffic.demo.RoadData;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of the Cologne feed format with the OpenTrafficParser, without network.
+ *
+ * @author Peter Karich
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FeedParseBenchmark {
+
+    @Param({"1000", "100000"})
+    int entries;
+
+    private final OpenTrafficParser parser = new OpenTrafficParser();
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkSetup setup = new BenchmarkSetup(40);
+        json = setup.toOpenTrafficJson(setup.createFeed(entries, 1));
+        setup.close();
+    }
+
+    @Benchmark
+    public RoadData fetchTrafficData() throws IOException {
+        RoadData data = new RoadData();
+        parser.parse(new ByteArrayInputStream(json), data);
+        return data;
+    }
+}
@@ -0,0 +1,294 @@
+package com.graphhopper.traffic.demo.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.traffic.demo.CustomGuiceModule;
+import com.graphhopper.traffic.demo.DemoServer;
+import com.graphhopper.traffic.demo.FeedMetrics.Histogram;
+import com.graphhopper.traffic.demo.RoadData;
+import com.graphhopper.traffic.demo.RoadDataCodec;
+import com.graphhopper.util.CmdArgs;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Replays a recorded feed into /datafeed at a fixed rate while several threads send /route
+ * requests, and reports the route latency, the write lock times and the ingest throughput of
+ * the server. Without a server URL a DemoServer is started on the generated grid of the
+ * BenchmarkSetup with a synthetic feed:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbench.main=com.graphhopper.traffic.demo.bench.LoadGenerator \
+ *     -Djmh.args="entries=20000 route_threads=8 duration_seconds=60"
+ * </pre>
+ * Arguments are key=value: server, feed (a recorded feed like traffic.json), scale (copies of
+ * every recorded entry), entries, grid_size, port, feed_interval_ms, format (binary or json),
+ * route_threads, duration_seconds and bbox (minLon,minLat,maxLon,maxLat of the route points,
+ * required with server). Arguments starting with server. configure the started DemoServer, e.g.
+ * server.traffic.ch.enabled=true.
+ *
+ * @author Peter Karich
+ */
+public class LoadGenerator {
+
+    private final CmdArgs args;
+    private final ObjectMapper mapper = CustomGuiceModule.createMapper();
+    private final OkHttpClient client = new OkHttpClient.Builder().
+            connectTimeout(5, TimeUnit.SECONDS).
+            readTimeout(60, TimeUnit.SECONDS).
+            build();
+    private final Histogram routeLatency = new Histogram();
+    private final Histogram postLatency = new Histogram();
+    private final AtomicLong routeErrors = new AtomicLong();
+    private final AtomicLong acceptedFeeds = new AtomicLong();
+    private final AtomicLong rejectedFeeds = new AtomicLong();
+    private final AtomicLong postedEntries = new AtomicLong();
+    private String serverUrl;
+
+    public static void main(String[] strArgs) throws Exception {
+        // exec:exec passes all arguments as one
+        new LoadGenerator(CmdArgs.read(String.join(" ", strArgs).trim().split("\\s+"))).run();
+    }
+
+    public LoadGenerator(CmdArgs args) {
+        this.args = args;
+    }
+
+    public void run() throws Exception {
+        BenchmarkSetup setup = null;
+        DemoServer server = null;
+        serverUrl = args.get("server", "");
+        double[] bbox;
+        if (serverUrl.isEmpty()) {
+            setup = new BenchmarkSetup(args.getInt("grid_size", 40));
+            int port = args.getInt("port", 8990);
+            server = startServer(setup, port);
+            serverUrl = "http://localhost:" + port;
+            int max = setup.getGridSize() - 1;
+            bbox = new double[]{setup.getLon(0), setup.getLat(0), setup.getLon(max), setup.getLat(max)};
+        } else {
+            bbox = parseBBox(args.get("bbox", ""));
+        }
+
+        try {
+            RoadData feed = loadFeed(setup);
+            boolean binary = !"json".equals(args.get("format", "binary"));
+            final byte[][] payloads = {encode(scale(feed, 1, false), binary), encode(scale(feed, 1, true), binary)};
+            final MediaType mediaType = MediaType.parse(binary ? RoadDataCodec.CONTENT_TYPE : "application/json");
+            final int entries = feed.size();
+            System.out.println("replaying " + entries + " entries every " + args.getLong("feed_interval_ms", 1000)
+                    + "ms against " + serverUrl + ", payload " + payloads[0].length + " bytes");
+
+            // one feed before the routes start, so that the matches are cached like in production
+            post(payloads[0], mediaType, entries);
+            Map<String, Object> before = fetchMetrics();
+
+            long durationMillis = args.getLong("duration_seconds", 60) * 1000;
+            final long deadline = System.currentTimeMillis() + durationMillis;
+            ScheduledExecutorService feeder = Executors.newSingleThreadScheduledExecutor();
+            final AtomicLong counter = new AtomicLong();
+            feeder.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        post(payloads[(int) (counter.incrementAndGet() % 2)], mediaType, entries);
+                    } catch (Exception ex) {
+                        System.err.println("posting the feed failed: " + ex);
+                    }
+                }
+            }, 0, args.getLong("feed_interval_ms", 1000), TimeUnit.MILLISECONDS);
+
+            List<Thread> routers = new ArrayList<>();
+            for (int i = 0; i < args.getInt("route_threads", 8); i++) {
+                final double[] tmpBBox = bbox;
+                Thread thread = new Thread("router" + i) {
+                    @Override
+                    public void run() {
+                        while (System.currentTimeMillis() < deadline) {
+                            route(tmpBBox);
+                        }
+                    }
+                };
+                thread.start();
+                routers.add(thread);
+            }
+            for (Thread thread : routers) {
+                thread.join();
+            }
+            feeder.shutdown();
+            feeder.awaitTermination(1, TimeUnit.MINUTES);
+            // let the server apply the queued feeds
+            Thread.sleep(2000);
+            report(before, fetchMetrics(), durationMillis);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+            if (setup != null) {
+                setup.close();
+            }
+        }
+    }
+
+    private DemoServer startServer(BenchmarkSetup setup, int port) throws Exception {
+        CmdArgs serverArgs = new CmdArgs();
+        serverArgs.put("datareader.file", setup.getOSMFile().getAbsolutePath());
+        serverArgs.put("graph.location", new File(setup.getDirectory(), "server-graph").getAbsolutePath());
+        serverArgs.put("graph.flag_encoders", "car");
+        serverArgs.put("prepare.ch.weightings", "no");
+        serverArgs.put("jetty.port", port);
+        serverArgs.put("jetty.resourcebase", "src/main/webapp");
+        serverArgs.put("traffic.cologne.enabled", false);
+        serverArgs.put("traffic.persist", false);
+        // the routes have to be calculated, not answered from the cache
+        serverArgs.put("traffic.route_cache.size", 0);
+        for (Map.Entry<String, String> entry : args.toMap().entrySet()) {
+            if (entry.getKey().startsWith("server.")) {
+                serverArgs.put(entry.getKey().substring("server.".length()), entry.getValue());
+            }
+        }
+
+        DemoServer server = new DemoServer(serverArgs);
+        server.start();
+        return server;
+    }
+
+    private RoadData loadFeed(BenchmarkSetup setup) throws IOException {
+        String feedFile = args.get("feed", "");
+        if (feedFile.isEmpty()) {
+            if (setup == null) {
+                throw new IllegalArgumentException("a server needs a recorded feed, see the feed argument");
+            }
+            return setup.createFeed(args.getInt("entries", 10_000), 1);
+        }
+
+        RoadData recorded = mapper.readValue(new File(feedFile), RoadData.class);
+        return scale(recorded, args.getInt("scale", 1), false);
+    }
+
+    /**
+     * Copies every entry the specified number of times with a different id, so that the server
+     * has to diff and apply more entries. The copies cover the same roads as the original.
+     *
+     * @param slower true to halve the values, then every entry is changed compared to the
+     * unmodified data
+     */
+    static RoadData scale(RoadData data, int copies, boolean slower) {
+        RoadData scaled = new RoadData(data.size() * copies, data.isEmpty() ? 0 : data.getPointEnd(data.size() - 1) * copies);
+        for (int c = 0; c < copies; c++) {
+            for (int i = 0; i < data.size(); i++) {
+                for (int p = data.getPointStart(i); p < data.getPointEnd(i); p++) {
+                    scaled.addPoint(data.getLat(p), data.getLon(p));
+                }
+                String id = c == 0 ? data.getId(i) : data.getId(i) + "#" + c;
+                double value = slower ? Math.max(1, Math.round(data.getValue(i) / 2)) : data.getValue(i);
+                scaled.addEntry(id, value, data.getValueType(i), data.getMode(i), data.getDirection(i));
+            }
+        }
+        return scaled;
+    }
+
+    private byte[] encode(RoadData data, boolean binary) throws IOException {
+        if (!binary) {
+            return mapper.writeValueAsBytes(data);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RoadDataCodec.write(data, out);
+        return out.toByteArray();
+    }
+
+    private void post(byte[] payload, MediaType mediaType, int entries) throws IOException {
+        long start = System.nanoTime();
+        Request request = new Request.Builder().url(serverUrl + "/datafeed").post(RequestBody.create(mediaType, payload)).build();
+        try (Response response = client.newCall(request).execute()) {
+            postLatency.recordSince(start);
+            if (response.code() == 202) {
+                acceptedFeeds.incrementAndGet();
+                postedEntries.addAndGet(entries);
+            } else if (response.code() == 429) {
+                rejectedFeeds.incrementAndGet();
+            } else {
+                throw new IOException("/datafeed answered " + response.code() + ": " + response.body().string());
+            }
+        }
+    }
+
+    private void route(double[] bbox) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String url = String.format(Locale.ROOT, "%s/route?point=%f,%f&point=%f,%f&vehicle=car&calc_points=false&instructions=false",
+                serverUrl, random.nextDouble(bbox[1], bbox[3]), random.nextDouble(bbox[0], bbox[2]),
+                random.nextDouble(bbox[1], bbox[3]), random.nextDouble(bbox[0], bbox[2]));
+        long start = System.nanoTime();
+        try (Response response = client.newCall(new Request.Builder().url(url).build()).execute()) {
+            response.body().bytes();
+            routeLatency.recordSince(start);
+            if (!response.isSuccessful()) {
+                routeErrors.incrementAndGet();
+            }
+        } catch (IOException ex) {
+            routeErrors.incrementAndGet();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> fetchMetrics() throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(serverUrl + "/metrics").build()).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("/metrics answered " + response.code() + ", it is only available on the same machine");
+            }
+            return mapper.readValue(response.body().byteStream(), Map.class);
+        }
+    }
+
+    private void report(Map<String, Object> before, Map<String, Object> after, long durationMillis) {
+        double seconds = durationMillis / 1000.0;
+        System.out.println("---");
+        System.out.println(String.format(Locale.ROOT, "routes: %d in %.0fs (%.1f/s), errors: %d",
+                routeLatency.getCount(), seconds, routeLatency.getCount() / seconds, routeErrors.get()));
+        System.out.println("route latency us: " + routeLatency.toMap()
+                + ", p90: " + routeLatency.getPercentile(0.9) + ", p999: " + routeLatency.getPercentile(0.999));
+        System.out.println("feeds posted: " + acceptedFeeds.get() + ", rejected with 429: " + rejectedFeeds.get()
+                + ", post latency us: " + postLatency.toMap());
+
+        long feeds = getLong(after, "feeds") - getLong(before, "feeds");
+        long entries = getLong(after, "entries") - getLong(before, "entries");
+        System.out.println(String.format(Locale.ROOT, "ingest: %d feeds with %d entries applied (%.0f entries/s), %d entries posted",
+                feeds, entries, entries / seconds, postedEntries.get()));
+        // the histograms of the server are cumulative, the first feed is included
+        System.out.println("write lock wait us: " + after.get("write_lock_wait_us"));
+        System.out.println("write lock hold us: " + after.get("write_lock_hold_us"));
+        System.out.println("feed us: " + after.get("feed_us"));
+    }
+
+    private static long getLong(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static double[] parseBBox(String str) {
+        String[] parts = str.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("bbox has to be minLon,minLat,maxLon,maxLat but was " + str);
+        }
+
+        double[] bbox = new double[4];
+        for (int i = 0; i < 4; i++) {
+            bbox[i] = Double.parseDouble(parts[i].trim());
+        }
+        return bbox;
+    }
+}
@@ -0,0 +1,91 @@
+package com.graphhopper.traffic.demo.bench;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.traffic.demo.DataUpdater;
+import com.graphhopper.traffic.demo.RoadData;
+import com.graphhopper.traffic.demo.TrafficGraphHopper;
+import com.graphhopper.traffic.demo.TrafficOverlay;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Route latency percentiles while one thread feeds changed data all the time. The routes are
+ * calculated in-process via GraphHopper.route, i.e. without the HTTP and JSON overhead of /route.
+ *
+ * @author Peter Karich
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RouteUnderFeedBenchmark {
+
+    @Param({"40"})
+    int gridSize;
+
+    @Param({"1000", "10000"})
+    int entries;
+
+    private BenchmarkSetup setup;
+    private TrafficGraphHopper hopper;
+    private DataUpdater updater;
+    private RoadData first;
+    private RoadData second;
+    private boolean odd;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        setup = new BenchmarkSetup(gridSize);
+        TrafficOverlay overlay = new TrafficOverlay();
+        hopper = setup.createHopper(overlay);
+        updater = setup.createUpdater(hopper, overlay);
+        first = setup.createFeed(entries, 1);
+        second = setup.changeValues(first);
+        updater.feed(first);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hopper.close();
+        setup.close();
+    }
+
+    @Benchmark
+    @Group("routeWhileFeeding")
+    @GroupThreads(3)
+    public GHResponse route() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int max = setup.getGridSize() - 1;
+        GHRequest request = new GHRequest(setup.getLat(random.nextInt(max)), setup.getLon(random.nextInt(max)),
+                setup.getLat(random.nextInt(max)), setup.getLon(random.nextInt(max))).
+                setVehicle("car").setWeighting("fastest");
+        return hopper.route(request);
+    }
+
+    @Benchmark
+    @Group("routeWhileFeeding")
+    @GroupThreads(1)
+    public void feed() {
+        odd = !odd;
+        updater.feed(odd ? second : first);
+    }
+}
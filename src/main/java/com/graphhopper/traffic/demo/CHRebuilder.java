@@ -0,0 +1,261 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.reader.osm.GraphHopperOSM;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.GraphExtension;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.TurnCostExtension;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.Parameters.Routing;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Contracts a copy of the graph in the background with the speeds of the current SpeedOverlay
+ * and swaps the new hierarchy in when it is ready. The graph itself is never modified, so the
+ * previous hierarchy keeps serving routes until the swap and is garbage collected when its last
+ * request finished.
+ * <p>
+ * A hierarchy only answers routes while no newer overlay was published, so routes follow the
+ * traffic at the feed interval. Routes before a swap and routes the hierarchy cannot answer, see
+ * isCompatible, use the uncontracted graph with the current overlay. With setStaleRoutes the
+ * hierarchy answers until the next swap instead, with the delay of one rebuild. Every rebuild
+ * copies the whole graph into memory.
+ *
+ * @author Peter Karich
+ */
+public class CHRebuilder {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final TrafficOverlay overlay;
+    private long intervalMillis = 60_000;
+    private volatile boolean staleRoutes;
+    private volatile Generation current;
+    private volatile long lastRebuildMillis = -1;
+    private GraphHopper hopper;
+    private FlagEncoder encoder;
+    private ScheduledExecutorService executor;
+    private RouteCache routeCache;
+
+    public CHRebuilder(TrafficOverlay overlay) {
+        this.overlay = overlay;
+    }
+
+    /**
+     * Sets the delay between the end of a rebuild and the check for a new overlay version.
+     */
+    public CHRebuilder setIntervalMillis(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("interval has to be positive but was " + intervalMillis);
+        }
+        this.intervalMillis = intervalMillis;
+        return this;
+    }
+
+    /**
+     * If true the current hierarchy answers routes until the next swap, even if a newer overlay
+     * was published. This keeps the routes fast if a rebuild takes longer than the feed interval.
+     */
+    public CHRebuilder setStaleRoutes(boolean staleRoutes) {
+        this.staleRoutes = staleRoutes;
+        return this;
+    }
+
+    /**
+     * Evicts the cached routes whose speeds changed with a swap.
+     */
+    public CHRebuilder setRouteCache(RouteCache routeCache) {
+        this.routeCache = routeCache;
+        return this;
+    }
+
+    /**
+     * Starts rebuilding for the specified loaded graph. The first hierarchy is built right away.
+     */
+    public synchronized void start(GraphHopper hopper) {
+        if (executor != null) {
+            return;
+        }
+
+        setHopper(hopper);
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CHRebuilder");
+                thread.setDaemon(true);
+                // routing threads have priority
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebuild();
+                } catch (Exception ex) {
+                    logger.error("Problem while rebuilding contraction hierarchies", ex);
+                }
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void setHopper(GraphHopper hopper) {
+        this.hopper = hopper;
+        this.encoder = hopper.getEncodingManager().fetchEdgeEncoders().get(0);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Builds a hierarchy for the current overlay and swaps it in, unless the current hierarchy
+     * was built for the same overlay version.
+     *
+     * @return true if a new hierarchy was swapped in
+     */
+    public boolean rebuild() {
+        SpeedOverlay snapshot = overlay.get();
+        Generation tmp = current;
+        if (tmp != null && tmp.snapshot.getVersion() == snapshot.getVersion()) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        TrafficWeighting weighting = new TrafficWeighting(encoder, new HintsMap("fastest").setVehicle(encoder.toString()), snapshot);
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        GraphExtension extension = graph.getExtension() instanceof TurnCostExtension
+                ? new TurnCostExtension() : new GraphExtension.NoOpExtension();
+        GraphHopperStorage copy = new GraphHopperStorage(Collections.<Weighting>singletonList(weighting),
+                new RAMDirectory(), graph.getEncodingManager(), graph.getNodeAccess().is3D(), extension);
+        copy.create(Math.max(100, graph.getNodes()));
+        // the node and edge ids of the copy are identical, so the location index can be shared
+        graph.copyTo(copy);
+        copy.freeze();
+
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(new RAMDirectory(), copy,
+                copy.getGraph(CHGraph.class, weighting), weighting, TraversalMode.NODE_BASED);
+        prepare.doWork();
+
+        GraphHopper routing = new GraphHopperOSM();
+        routing.setEncodingManager(graph.getEncodingManager());
+        routing.setCHEnabled(true);
+        routing.getCHFactoryDecorator().addWeighting(weighting);
+        routing.getCHFactoryDecorator().addPreparation(prepare);
+        routing.setGraphHopperStorage(copy);
+        routing.setLocationIndex(hopper.getLocationIndex());
+
+        current = new Generation(snapshot, routing);
+        // routes cached before the first swap used the live overlay and were invalidated by the feeds
+        if (routeCache != null && tmp != null) {
+            routeCache.invalidate(tmp.snapshot, snapshot);
+        }
+        lastRebuildMillis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("swapped in contraction hierarchies for overlay version " + snapshot.getVersion()
+                + ", took " + lastRebuildMillis + "ms");
+        return true;
+    }
+
+    /**
+     * @return the GraphHopper of the current hierarchy or null if none was built yet
+     */
+    public GraphHopper getRouting() {
+        Generation tmp = current;
+        return tmp == null ? null : tmp.routing;
+    }
+
+    /**
+     * @return the overlay version of the current hierarchy or -1 if none was built yet
+     */
+    public long getVersion() {
+        Generation tmp = current;
+        return tmp == null ? -1 : tmp.snapshot.getVersion();
+    }
+
+    public long getLastRebuildMillis() {
+        return lastRebuildMillis;
+    }
+
+    /**
+     * Returns the GraphHopper of the current hierarchy for the specified request and sets the
+     * weighting and vehicle of the request to the ones of the hierarchy.
+     *
+     * @return null if there is no hierarchy yet, it cannot answer the request or a newer overlay
+     * was published and stale routes are not allowed
+     */
+    public GraphHopper select(GHRequest request) {
+        Generation tmp = current;
+        if (tmp == null || !isCompatible(request, encoder.toString())) {
+            return null;
+        }
+        if (!staleRoutes && tmp.snapshot.getVersion() != overlay.get().getVersion()) {
+            return null;
+        }
+
+        request.setWeighting("fastest");
+        request.setVehicle(encoder.toString());
+        return tmp.routing;
+    }
+
+    /**
+     * The hierarchy only knows the fastest weighting of one vehicle, node based and without
+     * headings. Requests with a departure time use the SpeedProfiles instead.
+     */
+    static boolean isCompatible(GHRequest request, String vehicle) {
+        HintsMap hints = request.getHints();
+        String weighting = request.getWeighting();
+        if (!weighting.isEmpty() && !"fastest".equalsIgnoreCase(weighting)) {
+            return false;
+        }
+
+        if (!request.getVehicle().isEmpty() && !vehicle.equalsIgnoreCase(request.getVehicle())) {
+            return false;
+        }
+
+        String algo = request.getAlgorithm();
+        if (!algo.isEmpty() && !Parameters.Algorithms.DIJKSTRA_BI.equalsIgnoreCase(algo)
+                && !Parameters.Algorithms.ASTAR_BI.equalsIgnoreCase(algo)) {
+            return false;
+        }
+
+        if (hints.getBool(Parameters.CH.DISABLE, false) || hints.getBool(Routing.EDGE_BASED, false)
+                || hints.getBool(Routing.PASS_THROUGH, false) || !hints.get(TrafficGraphHopper.DEPARTURE_TIME, "").isEmpty()) {
+            return false;
+        }
+
+        for (int i = 0; i < request.getPoints().size(); i++) {
+            if (request.hasFavoredHeading(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Generation {
+
+        final SpeedOverlay snapshot;
+        final GraphHopper routing;
+
+        Generation(SpeedOverlay snapshot, GraphHopper routing) {
+            this.snapshot = snapshot;
+            this.routing = routing;
+        }
+    }
+}
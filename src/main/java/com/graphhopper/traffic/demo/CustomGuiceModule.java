@@ -1,8 +1,10 @@
 package com.graphhopper.traffic.demo;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -12,10 +14,17 @@ import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.google.inject.AbstractModule;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import com.google.inject.name.Names;
+import com.graphhopper.GraphHopper;
 import com.graphhopper.http.GraphHopperModule;
 import com.graphhopper.util.CmdArgs;
 import java.io.IOException;
+import java.time.ZoneId;
 import java.util.Iterator;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -28,27 +37,135 @@ import org.slf4j.LoggerFactory;
  */
 public class CustomGuiceModule extends GraphHopperModule {
 
+    private static final String COLOGNE_URL = "http://www.stadt-koeln.de/externe-dienste/open-data/traffic.php";
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TrafficOverlay overlay = new TrafficOverlay();
+    private SpeedProfiles profiles;
+    private final CHRebuilder chRebuilder = new CHRebuilder(overlay);
+    private LandmarkUpdater landmarks;
+    private RouteCache routeCache;
+    private ReplicationClient replicationClient;
+    private IngestQueue ingestQueue;
+    private FeedScheduler scheduler;
+    private final CmdArgs cmdArgs;
+    private DataUpdater updater;
 
     public CustomGuiceModule(CmdArgs args) {
         super(args);
+        this.cmdArgs = args;
     }
 
     @Override
     protected void configure() {
         super.configure();
 
-        final DataUpdater updater = new DataUpdater(lock.writeLock());
+        updater = new DataUpdater(lock.writeLock(), overlay);
+        updater.setMatchingThreads(cmdArgs.getInt("traffic.matching_threads", 1));
+        int maxProfiles = cmdArgs.getInt("traffic.profiles.max_edges", 200_000);
+        if (maxProfiles > 0) {
+            String zone = cmdArgs.get("traffic.profiles.timezone", "");
+            profiles = new SpeedProfiles(maxProfiles, zone.isEmpty() ? ZoneId.systemDefault() : ZoneId.of(zone));
+            updater.setProfiles(profiles);
+        }
         bind(DataUpdater.class).toInstance(updater);
-        // start update thread
-        updater.start();
-        
+        chRebuilder.setIntervalMillis(cmdArgs.getLong("traffic.ch.interval_seconds", 60) * 1000);
+        chRebuilder.setStaleRoutes(cmdArgs.getBool("traffic.ch.stale_routes", false));
+        bind(CHRebuilder.class).toInstance(chRebuilder);
+        landmarks = new LandmarkUpdater(cmdArgs.getInt("prepare.lm.landmarks", 16), cmdArgs.getInt("routing.lm.active_landmarks", 4));
+        bind(LandmarkUpdater.class).toInstance(landmarks);
+        int routeCacheSize = cmdArgs.getInt("traffic.route_cache.size", 0);
+        if (routeCacheSize > 0) {
+            routeCache = new RouteCache(routeCacheSize, cmdArgs.getLong("traffic.route_cache.max_age_seconds", 600) * 1000);
+            updater.setRouteCache(routeCache);
+            chRebuilder.setRouteCache(routeCache);
+        }
+
+        ReplicationLog replicationLog = new ReplicationLog(overlay, cmdArgs.getInt("traffic.replication.log_size", 64));
+        updater.setReplicationLog(replicationLog);
+        bind(ReplicationLog.class).toInstance(replicationLog);
+        String leaderUrl = cmdArgs.get("traffic.replication.leader_url", "");
+        if (!leaderUrl.isEmpty()) {
+            updater.setFollower(true);
+            replicationClient = new ReplicationClient(leaderUrl, updater);
+        }
+
+        ingestQueue = new IngestQueue(updater, cmdArgs.getInt("traffic.ingest_queue_size", 16));
+        bind(IngestQueue.class).toInstance(ingestQueue);
+
+        scheduler = new FeedScheduler(updater, ingestQueue, cmdArgs.getInt("traffic.scheduler_threads", 2));
+        if (cmdArgs.getBool("traffic.cologne.enabled", true) && replicationClient == null) {
+            HttpFeedSource cologne = new HttpFeedSource("cologne", cmdArgs.get("traffic.cologne.url", COLOGNE_URL),
+                    new OpenTrafficParser(), updater.getMetrics());
+            scheduler.add(cologne).setIntervalMillis(cmdArgs.getLong("traffic.cologne.interval_seconds", 150) * 1000);
+        }
+        // pushed feeds keep the default
+        if (scheduler.getMaxIntervalMillis() > 0) {
+            updater.setFeedIntervalMillis(scheduler.getMaxIntervalMillis());
+        }
+        bind(FeedScheduler.class).toInstance(scheduler);
+
         ObjectMapper prettyOM = createMapper();
         prettyOM.enable(SerializationFeature.INDENT_OUTPUT);
         bind(ObjectMapper.class).annotatedWith(Names.named("prettyprint")).toInstance(prettyOM);
     }
 
+    /**
+     * Starts the threads which feed the DataUpdater. This has to be called after the specified
+     * injector was created from this module, as the DataUpdater needs the injected GraphHopper.
+     */
+    public void start(Injector injector) {
+        GraphHopper hopper = injector.getInstance(GraphHopper.class);
+        ingestQueue.start();
+        // a follower gets the speeds from the leader
+        if (replicationClient != null) {
+            logger.info("following " + replicationClient.getLeaderUrl());
+            replicationClient.start(hopper);
+        } else {
+            scheduler.start();
+        }
+    }
+
+    /**
+     * The GraphHopper instance of the GraphHopperModule knows nothing about the traffic overlay,
+     * so its binding has to be overridden with the module returned here.
+     */
+    public Module createGraphHopperOverride() {
+        return new AbstractModule() {
+            @Override
+            protected void configure() {
+            }
+
+            @Provides
+            @Singleton
+            GraphHopper createGraphHopper() {
+                TrafficGraphHopper tmp = new TrafficGraphHopper(overlay, profiles);
+                tmp.forServer();
+                tmp.init(cmdArgs);
+                tmp.importOrLoad();
+                logger.info("loaded graph at:" + tmp.getGraphHopperLocation()
+                        + ", data_reader_file:" + tmp.getDataReaderFile()
+                        + ", flag_encoders:" + tmp.getEncodingManager()
+                        + ", " + tmp.getGraphHopperStorage().toDetailsString());
+                if (cmdArgs.getBool("traffic.landmarks.enabled", false)) {
+                    // before the restore, which can raise bounds
+                    landmarks.start(tmp);
+                    tmp.setLandmarks(landmarks);
+                    updater.setLandmarks(landmarks);
+                }
+                if (cmdArgs.getBool("traffic.persist", true)) {
+                    updater.restore(tmp);
+                }
+                tmp.setRouteCache(routeCache);
+                if (cmdArgs.getBool("traffic.ch.enabled", false)) {
+                    tmp.setCHRebuilder(chRebuilder);
+                    chRebuilder.start(tmp);
+                }
+                return tmp;
+            }
+        };
+    }
+
     public static ObjectMapper createMapper() {
         ObjectMapper mapper = new ObjectMapper();
         // json is underscore!
@@ -57,6 +174,8 @@ public class CustomGuiceModule extends GraphHopperModule {
         SimpleModule pointModule = new SimpleModule("PointModule");
         pointModule.addSerializer(Point.class, new PointSerializer());
         pointModule.addDeserializer(Point.class, new PointDeserializer());
+        pointModule.addSerializer(RoadData.class, new RoadDataSerializer());
+        pointModule.addDeserializer(RoadData.class, new RoadDataDeserializer());
         mapper.registerModule(pointModule);
         return mapper;
     }
@@ -84,4 +203,106 @@ public class CustomGuiceModule extends GraphHopperModule {
             jgen.writeEndArray();
         }
     }
+
+    /**
+     * Reads the entries directly into the columns of the RoadData without creating RoadEntry or
+     * Point objects.
+     */
+    static class RoadDataDeserializer extends JsonDeserializer<RoadData> {
+
+        @Override
+        public RoadData deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException, JsonProcessingException {
+            if (jp.getCurrentToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(jp, "road data has to be an array but was " + jp.getCurrentToken());
+            }
+
+            RoadData data = new RoadData();
+            while (jp.nextToken() == JsonToken.START_OBJECT) {
+                String id = null;
+                double value = Double.NaN;
+                String valueType = null;
+                String mode = null;
+                String direction = null;
+                while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = jp.getCurrentName();
+                    JsonToken token = jp.nextToken();
+                    if ("points".equals(field) && token == JsonToken.START_ARRAY) {
+                        while (jp.nextToken() == JsonToken.START_ARRAY) {
+                            // geojson
+                            jp.nextToken();
+                            double lon = jp.getDoubleValue();
+                            jp.nextToken();
+                            double lat = jp.getDoubleValue();
+                            while (jp.nextToken() != JsonToken.END_ARRAY) {
+                                jp.skipChildren();
+                            }
+                            data.addPoint(lat, lon);
+                        }
+                    } else if ("id".equals(field)) {
+                        id = token == JsonToken.VALUE_NULL ? null : jp.getValueAsString();
+                    } else if ("value".equals(field)) {
+                        if (!token.isNumeric()) {
+                            throw new JsonParseException(jp, "value of entry " + id + " has to be a number but was " + jp.getText());
+                        }
+                        value = jp.getDoubleValue();
+                        if (!RoadData.isValidValue(value)) {
+                            throw new JsonParseException(jp, "value of entry " + id + " has to be a finite number not below 0 but was " + value);
+                        }
+                    } else if ("value_type".equals(field)) {
+                        valueType = jp.getValueAsString();
+                    } else if ("mode".equals(field)) {
+                        mode = jp.getValueAsString();
+                    } else if ("direction".equals(field)) {
+                        direction = jp.getValueAsString();
+                    } else {
+                        jp.skipChildren();
+                    }
+                }
+
+                Mode tmpMode;
+                try {
+                    tmpMode = Mode.fromString(mode);
+                    // a reset reverts to the original speed and does not need a value
+                    if (Double.isNaN(value) && tmpMode != Mode.RESET) {
+                        throw new IllegalArgumentException("entry " + id + " has no value");
+                    }
+                    data.addEntry(id, Double.isNaN(value) ? 0 : value, ValueType.fromString(valueType), tmpMode, Direction.fromString(direction));
+                } catch (IllegalArgumentException ex) {
+                    throw new JsonParseException(jp, ex.getMessage(), ex);
+                }
+            }
+            return data;
+        }
+    }
+
+    static class RoadDataSerializer extends JsonSerializer<RoadData> {
+
+        @Override
+        public void serialize(RoadData data, JsonGenerator jgen, SerializerProvider provider) throws IOException, JsonProcessingException {
+            jgen.writeStartArray();
+            for (int i = 0; i < data.size(); i++) {
+                jgen.writeStartObject();
+                jgen.writeArrayFieldStart("points");
+                int end = data.getPointEnd(i);
+                for (int p = data.getPointStart(i); p < end; p++) {
+                    // geojson
+                    jgen.writeStartArray();
+                    jgen.writeNumber(data.getLon(p));
+                    jgen.writeNumber(data.getLat(p));
+                    jgen.writeEndArray();
+                }
+                jgen.writeEndArray();
+                jgen.writeNumberField("value", data.getValue(i));
+                jgen.writeStringField("value_type", data.getValueType(i).toString());
+                jgen.writeStringField("mode", data.getMode(i).toString());
+                // the default, so /roads stays as without directions
+                if (data.getDirection(i) != Direction.BOTH) {
+                    jgen.writeStringField("direction", data.getDirection(i).toString());
+                }
+                jgen.writeStringField("id", data.getId(i));
+                jgen.writeEndObject();
+            }
+            jgen.writeEndArray();
+        }
+    }
 }
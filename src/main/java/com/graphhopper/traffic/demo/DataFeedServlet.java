@@ -1,30 +1,75 @@
 package com.graphhopper.traffic.demo;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.graphhopper.http.GraphHopperServlet;
+import java.io.EOFException;
 import java.io.IOException;
+import java.util.Collections;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
+ * Accepts a feed and queues it for the applier thread of the IngestQueue. The response does not
+ * wait for the feed to be applied: it is 202 with the batch id, or 429 if the queue is full. The
+ * entries are added to the polled state, they do not replace it.
+ * <p>
+ * The feed is read as JSON or, with the content type of the RoadDataCodec, in the binary format.
  *
  * @author Peter Karich
  */
 public class DataFeedServlet extends GraphHopperServlet {
 
+    // not defined in the servlet API
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
     @Inject
     private ObjectMapper mapper;
 
+    @Inject
+    private IngestQueue ingestQueue;
+
     @Inject
     private DataUpdater updater;
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        RoadData data = mapper.readValue(req.getInputStream(), RoadData.class);
-        System.out.println("data:" + data);
+        if (updater.isFollower()) {
+            writeResponse(resp, HttpServletResponse.SC_CONFLICT, "message", "this node follows a leader, send feeds to the leader");
+            return;
+        }
+
+        RoadData data;
+        try {
+            if (RoadDataCodec.isRequested(req.getContentType())) {
+                data = RoadDataCodec.read(req.getInputStream(), req.getContentLengthLong());
+            } else {
+                data = mapper.readValue(req.getInputStream(), RoadData.class);
+            }
+        } catch (JsonProcessingException ex) {
+            writeResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "message", ex.getOriginalMessage());
+            return;
+        } catch (IllegalArgumentException | EOFException ex) {
+            writeResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "message", "invalid road data " + ex.getMessage());
+            return;
+        }
+
+        long batchId = ingestQueue.offer(data);
+        if (batchId < 0) {
+            resp.setHeader("Retry-After", "1");
+            writeResponse(resp, SC_TOO_MANY_REQUESTS, "message", "ingest queue is full");
+            return;
+        }
+
+        writeResponse(resp, HttpServletResponse.SC_ACCEPTED, "batch_id", batchId);
+    }
 
-        updater.feed(data);
+    private void writeResponse(HttpServletResponse resp, int status, String key, Object value) throws IOException {
+        resp.setStatus(status);
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        mapper.writeValue(resp.getOutputStream(), Collections.singletonMap(key, value));
     }
 }
@@ -1,26 +1,21 @@
 package com.graphhopper.traffic.demo;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.graphhopper.GraphHopper;
-import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.storage.Graph;
-import com.graphhopper.storage.index.LocationIndex;
-import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.traffic.demo.FeedState.FeedDiff;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TIntHashSet;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.Lock;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,202 +26,651 @@ import org.slf4j.LoggerFactory;
 @Singleton
 public class DataUpdater {
 
-    private static final String ROAD_DATA_URL = "http://www.stadt-koeln.de/externe-dienste/open-data/traffic.php";
+    private static final int MATCHING_CHUNK = 256;
+    // speeds expire after this many missed fetches of the slowest feed source
+    private static final int MISSED_FEEDS = 3;
     @Inject
     private GraphHopper hopper;
 
-    @Inject
-    private ObjectMapper objectMapper;
-
-    private final OkHttpClient client;
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final Lock writeLock;
-    private final long seconds = 150;
-    private RoadData currentRoads;
+    private long ttlMillis = MISSED_FEEDS * 150_000;
+    private SpeedExpiry expiry = new SpeedExpiry(ttlMillis, 32);
+    private volatile RoadData currentRoads = new RoadData();
+    private final MatchCache matchCache = new MatchCache();
+    private final TrafficOverlay overlay;
+    private RoadMatcher matcher;
+    private volatile ForkJoinPool matchingPool;
+    private final FeedState feedState = new FeedState();
+    // the data the feedState was created from, null after the feedState was cleared
+    private RoadData appliedData;
+    // roughly 1km
+    private final RoadIndex roadIndex = new RoadIndex(0.01);
+    private Graph feedGraph;
+    private TrafficStore store;
+    private SpeedProfiles profiles;
+    private LandmarkUpdater landmarks;
+    private RouteCache routeCache;
+    private ReplicationLog replicationLog;
+    private volatile boolean follower;
+    private volatile long leaderVersion = -1;
+    private final FeedMetrics metrics = new FeedMetrics();
 
     public DataUpdater(Lock writeLock) {
+        this(writeLock, new TrafficOverlay());
+    }
+
+    public DataUpdater(Lock writeLock, TrafficOverlay overlay) {
         this.writeLock = writeLock;
-        client = new OkHttpClient.Builder().connectTimeout(5, TimeUnit.SECONDS).build();
+        this.overlay = overlay;
+    }
+
+    /**
+     * Speeds which no feed confirms for three times the specified interval are reverted. It has
+     * to be the largest fetch interval of the feed sources, otherwise speeds expire between two
+     * fetches. This has to be called before the first feed and before restore.
+     */
+    public synchronized DataUpdater setFeedIntervalMillis(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("feed interval has to be positive but was " + intervalMillis);
+        }
+        ttlMillis = MISSED_FEEDS * intervalMillis;
+        expiry = new SpeedExpiry(ttlMillis, 32);
+        return this;
+    }
+
+    public long getTTLMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * Feeds the specified data in two phases: the matching of the entries to edges happens
+     * without holding the write lock. The new speeds are then copied into the next version of the
+     * SpeedOverlay, which is published under the write lock. The edge flags of the graph are never
+     * modified, so routing requests do not need to lock. Feeds are applied one after the other.
+     * <p>
+     * Only entries which were added or changed since the previous feed are matched and applied.
+     * Traffic speeds of edges which are not confirmed by a feed for ttlMillis are reverted. If the
+     * same instance as in the previous feed is fed again, e.g. the unchanged payload of a
+     * FeedSource, only the expiry of its speeds is refreshed.
+     */
+    public synchronized void feed(RoadData data) {
+        if (follower) {
+            throw new IllegalStateException("this node follows a leader and does not apply feeds");
+        }
+
+        long feedStart = System.nanoTime();
+        Graph graph = hopper.getGraphHopperStorage();
+        if (graph != feedGraph) {
+            feedState.clear();
+            expiry.clear();
+            if (profiles != null && feedGraph != null) {
+                profiles.clear();
+            }
+            feedGraph = graph;
+            appliedData = null;
+        }
+
+        if (data == appliedData) {
+            refreshExpiry(data, System.currentTimeMillis());
+            expire();
+            metrics.getFeed().recordSince(feedStart);
+            logger.info("Feed with " + data.size() + " street elements unchanged, refreshed their expiry");
+            return;
+        }
+
+        // without a previous state the diff cannot report removed ids
+        boolean fullDiff = feedState.size() == 0;
+        FeedDiff diff = feedState.diff(data);
+        TIntArrayList indices = new TIntArrayList(diff.getAdded());
+        indices.addAll(diff.getChanged());
+
+        SpeedOverlay previous = overlay.get();
+        EdgeUpdates updates = prepare(graph, previous, data, indices);
+        long now = System.currentTimeMillis();
+        refreshExpiry(data, now);
+        int expired = expire(previous, updates, now);
+        SpeedOverlay next = updates.size() == 0 ? previous : previous.apply(updates);
+        if (landmarks != null) {
+            landmarks.check(graph, updates, next.getVersion());
+        }
+
+        long lockedMicros = publish(previous, next, data);
+        if (next != previous) {
+            published(next, updates);
+        }
+        save(graph, previous, next, updates, updates.getLookups() > 0);
+        recordProfiles(graph, next, updates, now);
+        feedState.apply(data, diff);
+        appliedData = data;
+        forgetMatches(data, diff, fullDiff);
+        roadIndex.update(data, diff);
+        metrics.recordFeed(data.size(), diff, updates, expired);
+        metrics.getFeed().recordSince(feedStart);
+
+        logger.info("Feed with " + data.size() + " street elements, " + diff + ". Updated " + updates.size() + " edge directions, expired:" + expired
+                + ", errors:" + updates.getErrors() + ", clashes:" + updates.getClashes() + ", lookups:" + updates.getLookups()
+                + ", cached matches:" + matchCache.size() + ", write lock held:" + lockedMicros + "us, overlay " + next);
+    }
+
+    /**
+     * Reverts the speeds of all edges which were not confirmed by a feed for ttlMillis. This is
+     * called periodically by the FeedScheduler, so speeds also expire if fetching fails for a
+     * longer time.
+     */
+    public synchronized void expire() {
+        if (follower) {
+            return;
+        }
+
+        SpeedOverlay previous = overlay.get();
+        EdgeUpdates updates = new EdgeUpdates(0);
+        int expired = expire(previous, updates, System.currentTimeMillis());
+        metrics.recordExpired(expired);
+        if (updates.size() == 0) {
+            return;
+        }
+
+        SpeedOverlay next = previous.apply(updates);
+        long lockedMicros = publish(previous, next, null);
+        published(next, updates);
+        save(feedGraph, previous, next, updates, false);
+        // the reverted entries have to be applied again if a later feed contains them unchanged
+        feedState.clear();
+        appliedData = null;
+        logger.info("Reverted " + updates.size() + " of " + expired + " expired edges, write lock held:" + lockedMicros + "us");
+    }
+
+    /**
+     * Maps the overlay and the matches saved by a previous run back in and saves them after every
+     * feed from now on. Restored speeds expire like speeds of a feed if no feed confirms them.
+     */
+    public synchronized void restore(GraphHopper hopper) {
+        Graph graph = hopper.getGraphHopperStorage();
+        store = new TrafficStore(hopper.getGraphHopperLocation());
+        feedState.clear();
+        appliedData = null;
+        expiry.clear();
+        feedGraph = graph;
+
+        SpeedOverlay restored = store.loadOverlay(graph);
+        int speeds = 0;
+        if (restored != null && restored.getVersion() > overlay.get().getVersion()) {
+            long now = System.currentTimeMillis();
+            EdgeUpdates restoredSpeeds = new EdgeUpdates(0);
+            for (int edgeKey = 0; edgeKey < restored.size(); edgeKey++) {
+                if (restored.hasSpeed(edgeKey)) {
+                    expiry.touch(edgeKey, now);
+                    restoredSpeeds.add(edgeKey, restored.getSpeed(edgeKey));
+                    speeds++;
+                }
+            }
+            if (landmarks != null) {
+                landmarks.check(graph, restoredSpeeds, restored.getVersion());
+            }
+            overlay.publish(restored);
+            if (replicationLog != null) {
+                replicationLog.reset(restored.getVersion());
+            }
+        }
+
+        matchCache.checkGraph(graph);
+        int loadedMatches = store.loadMatches(matchCache, graph);
+        logger.info("Restored " + speeds + " traffic speeds and " + loadedMatches + " matches from " + hopper.getGraphHopperLocation());
+    }
+
+    /**
+     * Keeps the landmarks valid for traffic speeds above the flag speed, see LandmarkUpdater.
+     */
+    public DataUpdater setLandmarks(LandmarkUpdater landmarks) {
+        this.landmarks = landmarks;
+        return this;
+    }
+
+    /**
+     * Evicts the cached routes over the edges of every published change.
+     */
+    public DataUpdater setRouteCache(RouteCache routeCache) {
+        this.routeCache = routeCache;
+        return this;
+    }
+
+    /**
+     * Makes the published changes available to the followers.
+     */
+    public DataUpdater setReplicationLog(ReplicationLog replicationLog) {
+        this.replicationLog = replicationLog;
+        return this;
+    }
+
+    /**
+     * A follower only applies the speeds replicated from the leader, see applyReplicated.
+     */
+    public DataUpdater setFollower(boolean follower) {
+        this.follower = follower;
+        return this;
+    }
+
+    public boolean isFollower() {
+        return follower;
+    }
+
+    /**
+     * @return the last version of the leader applied by applyReplicated or -1
+     */
+    public long getLeaderVersion() {
+        return leaderVersion;
+    }
+
+    /**
+     * Publishes the speeds the leader resolved. Nothing is matched, so the write lock is the
+     * only cost that grows with the number of followers. A full batch replaces all speeds.
+     */
+    public synchronized void applyReplicated(ReplicationLog.Batch batch) {
+        long start = System.nanoTime();
+        SpeedOverlay previous = overlay.get();
+        EdgeUpdates updates = batch.getUpdates();
+        if (batch.isFull()) {
+            // only the differences, speeds the leader does not have are reverted
+            SpeedOverlay leader = SpeedOverlay.EMPTY.apply(updates);
+            updates = new EdgeUpdates(updates.size());
+            int size = Math.max(previous.size(), leader.size());
+            for (int edgeKey = 0; edgeKey < size; edgeKey++) {
+                if (Float.compare((float) previous.getSpeed(edgeKey), (float) leader.getSpeed(edgeKey)) != 0) {
+                    updates.add(edgeKey, leader.getSpeed(edgeKey));
+                }
+            }
+        }
+
+        if (updates.size() > 0) {
+            Graph graph = hopper.getGraphHopperStorage();
+            SpeedOverlay next = previous.apply(updates);
+            if (landmarks != null) {
+                landmarks.check(graph, updates, next.getVersion());
+            }
+            long lockedMicros = publish(previous, next, null);
+            published(next, updates);
+            save(graph, previous, next, updates, false);
+            metrics.getFeed().recordSince(start);
+            logger.info("Replicated " + updates.size() + " edge directions of leader version " + batch.getVersion()
+                    + (batch.isFull() ? " (full)" : "") + ", write lock held:" + lockedMicros + "us, overlay " + next);
+        }
+        leaderVersion = batch.getVersion();
+    }
+
+    /**
+     * Passes the changes of a published overlay to the route cache and the followers.
+     */
+    private void published(SpeedOverlay next, EdgeUpdates updates) {
+        if (routeCache != null) {
+            routeCache.invalidate(updates);
+        }
+        if (replicationLog != null) {
+            replicationLog.append(next.getVersion(), updates);
+        }
+    }
+
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * Learns typical speeds from every feed, see setProfiles.
+     */
+    public DataUpdater setProfiles(SpeedProfiles profiles) {
+        this.profiles = profiles;
+        return this;
+    }
+
+    /**
+     * Records the speeds of the edge directions with a profile for the current quarter hour, their
+     * flag speed if the specified overlay has no traffic speed, so the profiles also learn when
+     * there is no jam. Edge directions without a profile get one when the specified updates set a
+     * traffic speed, other edge directions are not visited.
+     */
+    private void recordProfiles(Graph graph, SpeedOverlay current, EdgeUpdates updates, long now) {
+        if (profiles == null) {
+            return;
+        }
+
+        int[] profiled = profiles.getEdgeKeys();
+        EdgeUpdates observed = new EdgeUpdates(profiled.length + updates.size());
+        FlagEncoder carEncoder = hopper.getEncodingManager().getEncoder("car");
+        for (int edgeKey : profiled) {
+            observed.add(edgeKey, current.hasSpeed(edgeKey) ? current.getSpeed(edgeKey) : getFlagSpeed(carEncoder, graph, edgeKey));
+        }
+        for (int i = 0; i < updates.size(); i++) {
+            int edgeKey = updates.getEdgeKey(i);
+            if (!profiles.hasProfile(edgeKey) && current.hasSpeed(edgeKey)) {
+                observed.add(edgeKey, current.getSpeed(edgeKey));
+            }
+        }
+        profiles.record(observed, profiles.getBucket(now));
+    }
+
+    /**
+     * Drops the cached matches of the entries which left the feed.
+     */
+    private void forgetMatches(RoadData data, FeedDiff diff, boolean fullDiff) {
+        if (fullDiff) {
+            matchCache.retain(data);
+            return;
+        }
+
+        for (String id : diff.getRemoved()) {
+            matchCache.remove(id);
+        }
+    }
+
+    private void save(Graph graph, SpeedOverlay previous, SpeedOverlay next, EdgeUpdates updates, boolean matchesChanged) {
+        if (store == null) {
+            return;
+        }
+
+        if (next != previous) {
+            store.saveOverlay(previous, next, updates, graph);
+        }
+        if (matchesChanged) {
+            store.saveMatches(matchCache, graph);
+        }
     }
 
-    public void feed(RoadData data) {
+    /**
+     * Publishes the specified overlay and road data under the write lock.
+     *
+     * @return the microseconds the write lock was held
+     */
+    private long publish(SpeedOverlay previous, SpeedOverlay next, RoadData data) {
+        long start = System.nanoTime();
         writeLock.lock();
+        long locked = System.nanoTime();
+        metrics.getLockWait().recordSince(start);
         try {
-            lockedFeed(data);
+            if (next != previous) {
+                overlay.publish(next);
+            }
+            if (data != null) {
+                currentRoads = data;
+            }
         } finally {
             writeLock.unlock();
         }
+        return metrics.getLockHold().recordSince(locked);
     }
 
-    private void lockedFeed(RoadData data) {
-        currentRoads = data;
-        Graph graph = hopper.getGraphHopperStorage();
-        FlagEncoder carEncoder = hopper.getEncodingManager().getEncoder("car");
-        LocationIndex locationIndex = hopper.getLocationIndex();
-
-        int errors = 0;
-        int updates = 0;
-        TIntHashSet edgeIds = new TIntHashSet(data.size());
-        for (RoadEntry entry : data) {
-
-            // TODO get more than one point -> our map matching component
-            Point point = entry.getPoints().get(entry.getPoints().size() / 2);
-            QueryResult qr = locationIndex.findClosest(point.lat, point.lon, EdgeFilter.ALL_EDGES);
-            if (!qr.isValid()) {
-                // logger.info("no matching road found for entry " + entry.getId() + " at " + point);
-                errors++;
+    /**
+     * Moves the deadline of all edge directions which get a speed from the specified data.
+     */
+    private void refreshExpiry(RoadData data, long now) {
+        for (int i = 0; i < data.size(); i++) {
+            if (data.getMode(i) != Mode.REPLACE) {
                 continue;
             }
 
-            int edgeId = qr.getClosestEdge().getEdge();
-            if (edgeIds.contains(edgeId)) {
-                // TODO this wouldn't happen with our map matching component
-                errors++;
+            EdgeMatch match = matchCache.get(data.getId(i), data.getGeometryHash(i));
+            if (match == null) {
                 continue;
             }
 
-            edgeIds.add(edgeId);
-            EdgeIteratorState edge = graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
-            double value = entry.getValue();
-            if ("replace".equalsIgnoreCase(entry.getMode())) {
-                if ("speed".equalsIgnoreCase(entry.getValueType())) {
-                    double oldSpeed = carEncoder.getSpeed(edge.getFlags());
-                    if (oldSpeed != value) {
-                        updates++;
-                        // TODO use different speed for the different directions (see e.g. Bike2WeightFlagEncoder)
-                        logger.info("Speed change at " + entry.getId() + " (" + point + "). Old: " + oldSpeed + ", new:" + value);
-                        edge.setFlags(carEncoder.setSpeed(edge.getFlags(), value));
+            Direction direction = data.getDirection(i);
+            for (int m = 0; m < match.size(); m++) {
+                for (int d = 0; d < 2; d++) {
+                    if (direction.includes(d == 0)) {
+                        expiry.touch(match.getEdgeKey(m, d == 0), now);
                     }
-                } else {
-                    throw new IllegalStateException("currently no other value type than 'speed' is supported");
                 }
-            } else {
-                throw new IllegalStateException("currently no other mode than 'replace' is supported");
             }
         }
-
-        logger.info("Updated " + updates + " street elements of " + data.size() + ". Unchanged:" + (data.size() - updates) + ", errors:" + errors);
     }
 
-    protected String fetchJSONString(String url) throws IOException {
-        Request okRequest = new Request.Builder().url(url).build();
-        return client.newCall(okRequest).execute().body().string();
+    /**
+     * Adds a revert for every expired edge direction that still has a speed in the specified
+     * snapshot.
+     *
+     * @return the number of expired edge directions
+     */
+    private int expire(SpeedOverlay previous, EdgeUpdates updates, long now) {
+        TIntArrayList expired = new TIntArrayList();
+        expiry.expire(now, expired);
+        for (int i = 0; i < expired.size(); i++) {
+            int edgeKey = expired.get(i);
+            if (previous.hasSpeed(edgeKey)) {
+                updates.add(edgeKey, Double.NaN);
+            }
+        }
+        return expired.size();
     }
 
-    public RoadData fetchTrafficData(String url) throws IOException {
-        final String trafficJsonString = fetchJSONString(url);
-        final OpenTrafficData trafficData = objectMapper.readValue(trafficJsonString, OpenTrafficData.class);
-        RoadData data = new RoadData();
+    /**
+     * Matches the specified added or changed entries to edges and collects the speeds that differ
+     * from the specified snapshot. Every entry only changes the edge directions of its Direction.
+     * <p>
+     * If several entries cover the same edge direction the first entry of the feed wins. So the
+     * unchanged entries are visited too, with their cached matches: they keep the edge directions
+     * they own and write the ones a removed or changed earlier entry released. Their speeds only
+     * differ from the snapshot in this case, so they rarely add updates. This must not be called
+     * concurrently as the match cache is not thread safe.
+     */
+    EdgeUpdates prepare(Graph graph, SpeedOverlay previous, RoadData data, TIntArrayList indices) {
+        FlagEncoder carEncoder = hopper.getEncodingManager().getEncoder("car");
+        EdgeUpdates updates = new EdgeUpdates(indices.size());
+        boolean[] changed = new boolean[data.size()];
+        for (int j = 0; j < indices.size(); j++) {
+            changed[indices.get(j)] = true;
+        }
+        TIntArrayList all = new TIntArrayList(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            all.add(i);
+        }
+        // only the added and changed entries miss the cache
+        EdgeMatch[] matches = matchAll(graph, data, all, updates);
+
+        TIntHashSet edgeKeys = new TIntHashSet(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            EdgeMatch match = matches[i];
+            if (match.isEmpty()) {
+                // logger.info("no matching road found for entry " + data.getId(i));
+                if (changed[i]) {
+                    updates.errors++;
+                }
+                continue;
+            }
+
+            Direction direction = data.getDirection(i);
+            if (data.getMode(i) == Mode.RESET) {
+                int changes = 0;
+                for (int m = 0; m < match.size(); m++) {
+                    for (int d = 0; d < 2; d++) {
+                        if (!direction.includes(d == 0)) {
+                            continue;
+                        }
+
+                        int edgeKey = match.getEdgeKey(m, d == 0);
+                        if (!edgeKeys.add(edgeKey)) {
+                            updates.clashes++;
+                            continue;
+                        }
 
-        for (final TrafficFeature trafficFeature : trafficData.features) {
-            final String idStr = trafficFeature.attributes.identifier;
-            final int streetUsage = trafficFeature.attributes.auslastung;
+                        expiry.remove(edgeKey);
+                        if (previous.hasSpeed(edgeKey)) {
+                            updates.add(edgeKey, Double.NaN);
+                            changes++;
+                        }
+                    }
+                }
 
-            // according to the docs http://www.offenedaten-koeln.de/dataset/verkehrskalender-der-stadt-k%C3%B6ln
-            // there are only three indications 0='ok', 1='slow' and 2='traffic jam'
-            if (streetUsage != 0 && streetUsage != 1 && streetUsage != 2) {
+                if (changes > 0 && logger.isDebugEnabled()) {
+                    logger.debug("Speed reset at " + data.getId(i) + " for " + changes + " directions of " + match.size() + " edges (" + match + ")");
+                }
                 continue;
             }
 
-            final double speed;
-            if (streetUsage == 1) {
-                speed = 20;
-            } else if (streetUsage == 2) {
-                speed = 5;
-            } else {
-                // If there is a traffic jam we need to revert afterwards!
-                speed = 45; // TODO getOldSpeed();
+            // currently the only value type is 'speed'. The parsers of pushed feeds reject invalid
+            // speeds, a polled feed is skipped here as a negative weight breaks every algorithm
+            if (!(data.getValue(i) >= 0)) {
+                if (changed[i]) {
+                    updates.errors++;
+                }
+                continue;
             }
+            // faster than the maximum speed would break the A* heuristic
+            double value = Math.min(data.getValue(i), carEncoder.getMaxSpeed());
+            int changes = 0;
+            for (int m = 0; m < match.size(); m++) {
+                for (int d = 0; d < 2; d++) {
+                    if (!direction.includes(d == 0)) {
+                        continue;
+                    }
 
-            final List<List<List<Double>>> paths = trafficFeature.geometry.paths;
-            for (int pathPointIndex = 0; pathPointIndex < paths.size(); pathPointIndex++) {
-                final List<Point> points = new ArrayList<>();
-                final List<List<Double>> path = paths.get(pathPointIndex);
-                for (int pointIndex = 0; pointIndex < path.size(); pointIndex++) {
-                    final List<Double> point = path.get(pointIndex);
-                    points.add(new Point(point.get(1), point.get(0)));
-                }
+                    int edgeKey = match.getEdgeKey(m, d == 0);
+                    if (!edgeKeys.add(edgeKey)) {
+                        updates.clashes++;
+                        continue;
+                    }
+
+                    double oldSpeed = previous.getSpeed(edgeKey);
+                    if (Double.isNaN(oldSpeed)) {
+                        oldSpeed = getFlagSpeed(carEncoder, graph, edgeKey);
+                    }
 
-                if (!points.isEmpty()) {
-                    data.add(new RoadEntry(idStr + "_" + pathPointIndex, points, speed, "speed", "replace"));
+                    if ((float) oldSpeed != (float) value) {
+                        updates.add(edgeKey, value);
+                        changes++;
+                    }
                 }
             }
 
+            if (changes > 0 && logger.isDebugEnabled()) {
+                logger.debug("Speed change at " + data.getId(i) + " for " + changes + " directions of " + match.size() + " edges (" + match + "), new:" + value);
+            }
         }
+        return updates;
+    }
 
-        return data;
+    /**
+     * @return the speed of the edge flags for the direction of the specified edge key
+     */
+    static double getFlagSpeed(FlagEncoder encoder, Graph graph, int edgeKey) {
+        EdgeIteratorState edge = graph.getEdgeIteratorState(SpeedOverlay.getEdgeId(edgeKey), Integer.MIN_VALUE);
+        // the edge key is relative to the node ids, the flags to the stored orientation
+        boolean storageReverse = (edgeKey & 1) == 1 != edge.getBaseNode() > edge.getAdjNode();
+        return storageReverse ? encoder.getReverseSpeed(edge.getFlags()) : encoder.getSpeed(edge.getFlags());
     }
 
-    private final AtomicBoolean running = new AtomicBoolean(false);
+    /**
+     * Returns the edges for the specified entries, the other elements of the returned array are
+     * null. Only entries which are not in the match cache are matched, all of them in one batch.
+     * The batch is split into chunks for the matching pool if more than one thread is configured.
+     */
+    EdgeMatch[] matchAll(Graph graph, RoadData data, TIntArrayList indices, EdgeUpdates updates) {
+        matchCache.checkGraph(graph);
+        if (matcher == null || matcher.getGraph() != graph) {
+            matcher = new RoadMatcher(graph, hopper.getLocationIndex());
+        }
 
-    public void start() {
-        if (running.get()) {
-            return;
+        EdgeMatch[] matches = new EdgeMatch[data.size()];
+        int[] geometryHashes = new int[data.size()];
+        TIntArrayList misses = new TIntArrayList();
+        for (int j = 0; j < indices.size(); j++) {
+            int i = indices.get(j);
+            geometryHashes[i] = data.getGeometryHash(i);
+            matches[i] = matchCache.get(data.getId(i), geometryHashes[i]);
+            if (matches[i] == null) {
+                misses.add(i);
+            }
         }
 
-        running.set(true);
-        new Thread("DataUpdater" + seconds) {
-            @Override
-            public void run() {
-                logger.info("fetch new data every " + seconds + " seconds");
-                while (running.get()) {
-                    try {
-                        logger.info("fetch new data");
-                        RoadData data = fetchTrafficData(ROAD_DATA_URL);
-                        feed(data);
-                        try {
-                            Thread.sleep(seconds * 1000);
-                        } catch (InterruptedException ex) {
-                            logger.info("update thread stopped");
-                            break;
-                        }
-                    } catch (Exception ex) {
-                        logger.error("Problem while fetching data", ex);
-                    }
+        if (misses.isEmpty()) {
+            return matches;
+        }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = matchingPool;
+        if (pool == null || misses.size() < 2 * MATCHING_CHUNK) {
+            match(matcher, data, misses, 0, misses.size(), matches);
+        } else {
+            final RoadMatcher tmpMatcher = matcher;
+            List<Callable<Object>> tasks = new ArrayList<>();
+            for (int from = 0; from < misses.size(); from += MATCHING_CHUNK) {
+                final int chunkFrom = from;
+                final int chunkTo = Math.min(misses.size(), from + MATCHING_CHUNK);
+                tasks.add(() -> {
+                    match(tmpMatcher, data, misses, chunkFrom, chunkTo, matches);
+                    return null;
+                });
+            }
+
+            try {
+                for (Future<Object> future : pool.invokeAll(tasks)) {
+                    future.get();
                 }
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new IllegalStateException("Problem while matching " + misses.size() + " entries", ex);
             }
-        }.start();
+        }
+
+        for (int j = 0; j < misses.size(); j++) {
+            int i = misses.get(j);
+            matchCache.put(data.getId(i), geometryHashes[i], matches[i]);
+        }
+        long micros = Math.max(1, metrics.getMatch().recordSince(start));
+        updates.lookups = misses.size();
+        logger.debug("Matched " + misses.size() + " entries in " + micros / 1000 + "ms, " + (misses.size() * 1000_000L / micros) + " entries/s");
+        return matches;
     }
 
-    public void stop() {
-        running.set(false);
+    /**
+     * Matches the entries misses[from..to) and stores the results in matches. The chunks write
+     * to disjoint elements, so the result does not depend on the number of threads.
+     */
+    private static void match(RoadMatcher matcher, RoadData data, TIntArrayList misses, int from, int to, EdgeMatch[] matches) {
+        for (int j = from; j < to; j++) {
+            int i = misses.get(j);
+            matches[i] = matcher.match(data, i);
+        }
     }
 
-    public RoadData getAll() {
-        if (currentRoads == null) {
-            return new RoadData();
+    /**
+     * Sets the number of threads used to match the entries of a feed. 1 matches in the thread
+     * calling feed.
+     */
+    public DataUpdater setMatchingThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("matching threads has to be at least 1 but was " + threads);
         }
 
-        return currentRoads;
+        if (matchingPool != null) {
+            matchingPool.shutdown();
+        }
+        matchingPool = threads == 1 ? null : new ForkJoinPool(threads);
+        return this;
     }
 
-    @JsonIgnoreProperties(ignoreUnknown=true)
-    private static class OpenTrafficData {
-        @JsonProperty("features")
-        public List<TrafficFeature> features;
+    public void stop() {
+        if (matchingPool != null) {
+            matchingPool.shutdown();
+        }
     }
 
-    @JsonIgnoreProperties(ignoreUnknown=true)
-    private static class TrafficFeature {
-        @JsonProperty("attributes")
-        public TrafficAttributes attributes;
-
-        @JsonProperty("geometry")
-        public TrafficGeometry geometry;
+    public TrafficOverlay getOverlay() {
+        return overlay;
     }
 
-    @JsonIgnoreProperties(ignoreUnknown=true)
-    private static class TrafficAttributes {
-        @JsonProperty("IDENTIFIER")
-        public String identifier;
+    public FeedMetrics getMetrics() {
+        return metrics;
+    }
 
-        @JsonProperty("AUSLASTUNG")
-        public Integer auslastung;
+    /**
+     * @return the spatial index over the last applied feed
+     */
+    public RoadIndex getRoadIndex() {
+        return roadIndex;
     }
 
-    @JsonIgnoreProperties(ignoreUnknown=true)
-    private static class TrafficGeometry {
-        @JsonProperty("paths")
-        public List<List<List<Double>>> paths;
+    /**
+     * @return the last applied feed, a new instance is returned only after a feed
+     */
+    public RoadData getAll() {
+        return currentRoads;
     }
 }
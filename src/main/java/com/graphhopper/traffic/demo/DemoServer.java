@@ -5,6 +5,7 @@ import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Module;
 import com.google.inject.servlet.GuiceFilter;
+import com.google.inject.util.Modules;
 import com.graphhopper.http.GHServer;
 import com.graphhopper.http.GraphHopperServletModule;
 import com.graphhopper.util.CmdArgs;
@@ -29,6 +30,7 @@ public class DemoServer {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final CmdArgs cmdArgs;
     private GHServer server;
+    private CustomGuiceModule customModule;
 
     public DemoServer(CmdArgs args) {
         this.cmdArgs = args;
@@ -48,16 +50,20 @@ public class DemoServer {
      */
     public void start() throws Exception {
         Injector injector = Guice.createInjector(createModule());
+        // the feeds need the injected DataUpdater
+        customModule.start(injector);
         start(injector);
     }
 
     protected Module createModule() {
+        customModule = new CustomGuiceModule(cmdArgs);
         return new AbstractModule() {
             @Override
             protected void configure() {
                 binder().requireExplicitBindings();
 
-                install(new CustomGuiceModule(cmdArgs));
+                // routing has to use the traffic overlay
+                install(Modules.override(customModule).with(customModule.createGraphHopperOverride()));
                 install(new GraphHopperServletModule(cmdArgs) {
 
                     @Override
@@ -72,6 +78,12 @@ public class DemoServer {
 
                         serve("/roads*").with(RoadsServlet.class);
                         bind(RoadsServlet.class).in(Singleton.class);
+
+                        serve("/metrics*").with(MetricsServlet.class);
+                        bind(MetricsServlet.class).in(Singleton.class);
+
+                        serve("/replication*").with(ReplicationServlet.class);
+                        bind(ReplicationServlet.class).in(Singleton.class);
                     }
                 });
 
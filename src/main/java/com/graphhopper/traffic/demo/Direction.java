@@ -0,0 +1,52 @@
+package com.graphhopper.traffic.demo;
+
+/**
+ * The travel direction a RoadEntry applies to, relative to the order of its points.
+ *
+ * @author Peter Karich
+ */
+public enum Direction {
+    /**
+     * Both directions of the road, e.g. if the provider does not distinguish them
+     */
+    BOTH,
+    /**
+     * Only traveling from the first to the last point
+     */
+    FORWARD,
+    /**
+     * Only traveling from the last to the first point
+     */
+    BACKWARD;
+
+    private final String name = name().toLowerCase();
+
+    /**
+     * @param forward true for traveling in the order of the points
+     */
+    public boolean includes(boolean forward) {
+        return this == BOTH || (this == FORWARD) == forward;
+    }
+
+    /**
+     * @return the direction for the specified string, BOTH for null
+     * @throws IllegalArgumentException if the specified string is not a known direction
+     */
+    public static Direction fromString(String str) {
+        if (str == null) {
+            return BOTH;
+        }
+
+        for (Direction direction : values()) {
+            if (direction.name.equalsIgnoreCase(str)) {
+                return direction;
+            }
+        }
+        throw new IllegalArgumentException("direction has to be 'both', 'forward' or 'backward' but was '" + str + "'");
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
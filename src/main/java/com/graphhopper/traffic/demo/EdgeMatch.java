@@ -0,0 +1,61 @@
+package com.graphhopper.traffic.demo;
+
+/**
+ * The edges a feed entry was matched to. The direction of an edge is 'reverse' if the points of
+ * the entry run from its higher to its lower node id. This is independent of the stored
+ * orientation of the edge and the same convention as the edge keys of GHUtility.createEdgeKey.
+ *
+ * @author Peter Karich
+ */
+public class EdgeMatch {
+
+    static final EdgeMatch EMPTY = new EdgeMatch(new int[0], new boolean[0]);
+
+    private final int[] edgeIds;
+    private final boolean[] reverse;
+
+    public EdgeMatch(int[] edgeIds, boolean[] reverse) {
+        if (edgeIds.length != reverse.length) {
+            throw new IllegalArgumentException("edgeIds and reverse must have the same length " + edgeIds.length + " vs. " + reverse.length);
+        }
+
+        this.edgeIds = edgeIds;
+        this.reverse = reverse;
+    }
+
+    public int size() {
+        return edgeIds.length;
+    }
+
+    public boolean isEmpty() {
+        return edgeIds.length == 0;
+    }
+
+    public int getEdgeId(int index) {
+        return edgeIds[index];
+    }
+
+    public boolean isReverse(int index) {
+        return reverse[index];
+    }
+
+    /**
+     * @return the edge key for traveling along the points of the entry (forward = true) or
+     * against them
+     */
+    public int getEdgeKey(int index, boolean forward) {
+        return SpeedOverlay.createEdgeKey(edgeIds[index], reverse[index] == forward);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < edgeIds.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(edgeIds[i]).append(reverse[i] ? "<" : ">");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package com.graphhopper.traffic.demo;
+
+import java.util.Arrays;
+
+/**
+ * The prepared result of the matching phase: a compact list of (edgeKey, newSpeed) writes that
+ * is published as a new speed overlay, plus some statistics of the matching.
+ *
+ * @author Peter Karich
+ */
+public class EdgeUpdates {
+
+    private int[] edgeKeys;
+    private float[] speeds;
+    private int size;
+    int errors;
+    int clashes;
+    int lookups;
+
+    public EdgeUpdates(int capacity) {
+        edgeKeys = new int[Math.max(4, capacity)];
+        speeds = new float[edgeKeys.length];
+    }
+
+    /**
+     * @param newSpeed the speed in km/h or NaN to revert to the speed of the edge flags
+     */
+    public void add(int edgeKey, double newSpeed) {
+        if (size == edgeKeys.length) {
+            edgeKeys = Arrays.copyOf(edgeKeys, size * 2);
+            speeds = Arrays.copyOf(speeds, size * 2);
+        }
+
+        edgeKeys[size] = edgeKey;
+        speeds[size] = (float) newSpeed;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getEdgeKey(int index) {
+        return edgeKeys[index];
+    }
+
+    public double getSpeed(int index) {
+        return speeds[index];
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the number of edge directions already covered by an earlier entry of the same feed
+     */
+    public int getClashes() {
+        return clashes;
+    }
+
+    public int getLookups() {
+        return lookups;
+    }
+}
@@ -0,0 +1,209 @@
+package com.graphhopper.traffic.demo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the feed cycles. Recording is lock free and cheap enough
+ * for every feed, the values are read via toMap, e.g. for the /metrics endpoint.
+ *
+ * @author Peter Karich
+ */
+public class FeedMetrics {
+
+    private final Histogram fetch = new Histogram();
+    private final Histogram parse = new Histogram();
+    private final Histogram match = new Histogram();
+    private final Histogram lockWait = new Histogram();
+    private final Histogram lockHold = new Histogram();
+    private final Histogram feed = new Histogram();
+    private final AtomicLong feeds = new AtomicLong();
+    private final AtomicLong fetchErrors = new AtomicLong();
+    private final AtomicLong unchangedFetches = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong unchangedEntries = new AtomicLong();
+    private final AtomicLong unmatchedEntries = new AtomicLong();
+    // the entries which missed the match cache and were matched
+    private final AtomicLong matchLookups = new AtomicLong();
+    private final AtomicLong updatedEdges = new AtomicLong();
+    private final AtomicLong expiredEdges = new AtomicLong();
+    private final AtomicLong clashes = new AtomicLong();
+
+    /**
+     * The time until the response of a feed source arrived, without its body.
+     */
+    public Histogram getFetch() {
+        return fetch;
+    }
+
+    /**
+     * The time to parse a fetched feed, including the download of the body which is streamed
+     * into the parser.
+     */
+    public Histogram getParse() {
+        return parse;
+    }
+
+    /**
+     * The time to match the entries which are not in the match cache.
+     */
+    public Histogram getMatch() {
+        return match;
+    }
+
+    /**
+     * The time the feed thread waits for the write lock.
+     */
+    public Histogram getLockWait() {
+        return lockWait;
+    }
+
+    /**
+     * The time the write lock is held to publish a feed.
+     */
+    public Histogram getLockHold() {
+        return lockHold;
+    }
+
+    /**
+     * The time to apply a feed, from the diff to the publish.
+     */
+    public Histogram getFeed() {
+        return feed;
+    }
+
+    public void recordFetchError() {
+        fetchErrors.incrementAndGet();
+    }
+
+    /**
+     * Records a fetch that returned the same payload as before. It was parsed unless the server
+     * answered 304, but the previous RoadData instance was returned, so it is not applied again.
+     */
+    public void recordUnchangedFetch() {
+        unchangedFetches.incrementAndGet();
+    }
+
+    public void recordFeed(int entryCount, FeedState.FeedDiff diff, EdgeUpdates updates, int expired) {
+        feeds.incrementAndGet();
+        entries.addAndGet(entryCount);
+        unchangedEntries.addAndGet(diff.getUnchanged());
+        unmatchedEntries.addAndGet(updates.getErrors());
+        matchLookups.addAndGet(updates.getLookups());
+        updatedEdges.addAndGet(updates.size());
+        expiredEdges.addAndGet(expired);
+        clashes.addAndGet(updates.getClashes());
+    }
+
+    public void recordExpired(int expired) {
+        expiredEdges.addAndGet(expired);
+    }
+
+    public long getFeeds() {
+        return feeds.get();
+    }
+
+    public long getUpdatedEdges() {
+        return updatedEdges.get();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("feeds", feeds.get());
+        map.put("fetch_errors", fetchErrors.get());
+        map.put("unchanged_fetches", unchangedFetches.get());
+        map.put("entries", entries.get());
+        map.put("unchanged_entries", unchangedEntries.get());
+        map.put("unmatched_entries", unmatchedEntries.get());
+        map.put("match_lookups", matchLookups.get());
+        map.put("updated_edges", updatedEdges.get());
+        map.put("expired_edges", expiredEdges.get());
+        map.put("clashes", clashes.get());
+        map.put("fetch_us", fetch.toMap());
+        map.put("parse_us", parse.toMap());
+        map.put("match_us", match.toMap());
+        map.put("feed_us", feed.toMap());
+        map.put("write_lock_wait_us", lockWait.toMap());
+        map.put("write_lock_hold_us", lockHold.toMap());
+        return map;
+    }
+
+    /**
+     * A histogram of durations in microseconds with one bucket per power of two. Percentiles are
+     * reported as the upper bound of their bucket, so they are at most two times too high.
+     */
+    public static class Histogram {
+
+        private static final int BUCKETS = 40;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long micros) {
+            micros = Math.max(0, micros);
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            counts.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(micros);
+            long tmpMax;
+            while ((tmpMax = max.get()) < micros && !max.compareAndSet(tmpMax, micros)) {
+            }
+        }
+
+        /**
+         * Records the time since the specified System.nanoTime.
+         */
+        public long recordSince(long startNanos) {
+            long micros = (System.nanoTime() - startNanos) / 1000;
+            record(micros);
+            return micros;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            long tmpCount = count.get();
+            return tmpCount == 0 ? 0 : (double) sum.get() / tmpCount;
+        }
+
+        /**
+         * @param quantile within [0, 1]
+         */
+        public long getPercentile(double quantile) {
+            long tmpCount = count.get();
+            if (tmpCount == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(quantile * tmpCount);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += counts.get(bucket);
+                if (seen >= rank) {
+                    // bucket b holds [2^(b-1), 2^b)
+                    return Math.min(max.get(), bucket == 0 ? 0 : (1L << bucket) - 1);
+                }
+            }
+            return max.get();
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", getCount());
+            map.put("mean", Math.round(getMean()));
+            map.put("p50", getPercentile(0.5));
+            map.put("p99", getPercentile(0.99));
+            map.put("max", getMax());
+            return map;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.graphhopper.traffic.demo;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Adapts the format of a traffic data provider to RoadData.
+ *
+ * @author Peter Karich
+ */
+public interface FeedParser {
+
+    /**
+     * Reads all entries of the specified stream into the specified data.
+     */
+    void parse(InputStream is, RoadData data) throws IOException;
+}
@@ -0,0 +1,236 @@
+package com.graphhopper.traffic.demo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls several feed sources on a small shared thread pool. Every source has its own interval
+ * with jitter and backs off exponentially while it fails. A source is never fetched concurrently
+ * with itself, its next fetch is scheduled when the previous one finished.
+ * <p>
+ * The latest data of all sources is merged and offered to the IngestQueue as the polled state, so
+ * there is only one apply stage for polled and pushed feeds. Entry ids have to be unique across the sources.
+ * Sources return their previous instance if nothing changed. If no source changed, the previous
+ * merged instance is offered again, so its speeds do not expire, and the DataUpdater only
+ * refreshes their expiry.
+ *
+ * @author Peter Karich
+ */
+public class FeedScheduler {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final DataUpdater updater;
+    private final IngestQueue ingestQueue;
+    private final int threads;
+    private final List<Schedule> schedules = new ArrayList<>();
+    // source name -> latest data, in the order the sources were added
+    private final Map<String, RoadData> latest = new LinkedHashMap<>();
+    // the merged data of latest, kept while no source changed
+    private RoadData lastMerged;
+    private long expiryMillis = 150_000;
+    private ScheduledExecutorService executor;
+
+    public FeedScheduler(DataUpdater updater, IngestQueue ingestQueue, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("scheduler threads has to be at least 1 but was " + threads);
+        }
+        this.updater = updater;
+        this.ingestQueue = ingestQueue;
+        this.threads = threads;
+    }
+
+    /**
+     * Adds the specified source with the default schedule. Sources have to be added before
+     * start.
+     */
+    public synchronized Schedule add(FeedSource source) {
+        if (executor != null) {
+            throw new IllegalStateException("sources have to be added before start");
+        }
+        for (Schedule schedule : schedules) {
+            if (schedule.source.getName().equals(source.getName())) {
+                throw new IllegalArgumentException("duplicate source name " + source.getName());
+            }
+        }
+
+        Schedule schedule = new Schedule(source);
+        schedules.add(schedule);
+        latest.put(source.getName(), null);
+        return schedule;
+    }
+
+    /**
+     * @return the largest fetch interval of the added sources or 0 if there is none
+     */
+    public synchronized long getMaxIntervalMillis() {
+        long max = 0;
+        for (Schedule schedule : schedules) {
+            max = Math.max(max, schedule.intervalMillis);
+        }
+        return max;
+    }
+
+    /**
+     * Sets the period in which expired traffic speeds are reverted, independent of the sources.
+     */
+    public FeedScheduler setExpiryMillis(long expiryMillis) {
+        this.expiryMillis = expiryMillis;
+        return this;
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+
+        final AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FeedScheduler" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        for (Schedule schedule : schedules) {
+            logger.info("fetch " + schedule.source + " every " + schedule.intervalMillis / 1000 + " seconds");
+            executor.execute(schedule);
+        }
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    updater.expire();
+                } catch (Exception ex) {
+                    logger.error("Problem while expiring speeds", ex);
+                }
+            }
+        }, expiryMillis, expiryMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized void reschedule(Schedule schedule, long delayMillis) {
+        if (executor != null) {
+            executor.schedule(schedule, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void deliver(FeedSource source, RoadData data) {
+        RoadData merged;
+        synchronized (latest) {
+            RoadData previous = latest.put(source.getName(), data);
+            if (data != previous || lastMerged == null) {
+                List<RoadData> datas = new ArrayList<>(latest.size());
+                for (RoadData tmp : latest.values()) {
+                    if (tmp != null) {
+                        datas.add(tmp);
+                    }
+                }
+                lastMerged = IngestQueue.merge(datas);
+            }
+            merged = lastMerged;
+        }
+
+        if (ingestQueue.offerPolled(merged) < 0) {
+            // the next fetch of any source offers the data of all sources again
+            logger.warn("Ingest queue is full, skipped data of " + source.getName());
+        }
+    }
+
+    /**
+     * The schedule of one source. The delays are in milliseconds.
+     */
+    public class Schedule implements Runnable {
+
+        private final FeedSource source;
+        private long intervalMillis = 150_000;
+        private double jitter = 0.1;
+        private long minBackoffMillis = 1000;
+        private long maxBackoffMillis = 300_000;
+        private int failures;
+
+        Schedule(FeedSource source) {
+            this.source = source;
+        }
+
+        public Schedule setIntervalMillis(long intervalMillis) {
+            this.intervalMillis = intervalMillis;
+            return this;
+        }
+
+        /**
+         * Every delay is randomly changed by up to this fraction, so that sources with the same
+         * interval do not fetch at the same time.
+         */
+        public Schedule setJitter(double jitter) {
+            if (jitter < 0 || jitter >= 1) {
+                throw new IllegalArgumentException("jitter has to be within [0, 1) but was " + jitter);
+            }
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * The delay after a failure starts with minBackoffMillis and is doubled for every further
+         * failure up to maxBackoffMillis.
+         */
+        public Schedule setBackoffMillis(long minBackoffMillis, long maxBackoffMillis) {
+            this.minBackoffMillis = minBackoffMillis;
+            this.maxBackoffMillis = maxBackoffMillis;
+            return this;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        @Override
+        public void run() {
+            try {
+                RoadData data = source.fetch();
+                failures = 0;
+                deliver(source, data);
+            } catch (Exception ex) {
+                failures++;
+                updater.getMetrics().recordFetchError();
+                logger.error("Problem while fetching " + source + ", failures:" + failures, ex);
+            }
+            reschedule(this, nextDelay(ThreadLocalRandom.current().nextDouble()));
+        }
+
+        /**
+         * @param random within [0, 1)
+         */
+        long nextDelay(double random) {
+            long delay;
+            if (failures == 0) {
+                delay = intervalMillis;
+            } else {
+                delay = maxBackoffMillis;
+                // avoid the overflow of the shift
+                if (failures < 31) {
+                    delay = Math.min(maxBackoffMillis, minBackoffMillis << (failures - 1));
+                }
+            }
+            return Math.max(0, Math.round(delay * (1 + jitter * (2 * random - 1))));
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.graphhopper.traffic.demo;
+
+import java.io.IOException;
+
+/**
+ * A provider of traffic data which is polled by the FeedScheduler.
+ *
+ * @author Peter Karich
+ */
+public interface FeedSource {
+
+    /**
+     * The name has to be unique for all sources of a FeedScheduler.
+     */
+    String getName();
+
+    /**
+     * @return the current data of this source, it replaces the previous data of this source
+     */
+    RoadData fetch() throws IOException;
+}
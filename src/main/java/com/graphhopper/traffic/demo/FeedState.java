@@ -0,0 +1,129 @@
+package com.graphhopper.traffic.demo;
+
+import gnu.trove.list.array.TIntArrayList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The state of the last applied feed per entry id. It is used to calculate the difference of a
+ * new feed, so that only added and changed entries need to be matched and written.
+ *
+ * @author Peter Karich
+ */
+public class FeedState {
+
+    private final Map<String, AppliedEntry> entries = new HashMap<>();
+
+    public FeedDiff diff(RoadData data) {
+        FeedDiff diff = new FeedDiff();
+        Set<String> ids = new HashSet<>(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            String id = data.getId(i);
+            ids.add(id);
+            AppliedEntry applied = entries.get(id);
+            if (applied == null) {
+                diff.added.add(i);
+            } else if (applied.geometryHash != data.getGeometryHash(i)
+                    || applied.value != data.getValue(i)
+                    || applied.valueType != data.getValueType(i)
+                    || applied.mode != data.getMode(i)
+                    || applied.direction != data.getDirection(i)) {
+                diff.changed.add(i);
+            } else {
+                diff.unchanged++;
+            }
+        }
+
+        for (String id : entries.keySet()) {
+            if (!ids.contains(id)) {
+                diff.removed.add(id);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Makes the specified data the new state. The diff has to be created from the same data.
+     */
+    public void apply(RoadData data, FeedDiff diff) {
+        for (String id : diff.removed) {
+            entries.remove(id);
+        }
+
+        put(data, diff.added);
+        put(data, diff.changed);
+    }
+
+    private void put(RoadData data, TIntArrayList indices) {
+        for (int j = 0; j < indices.size(); j++) {
+            int i = indices.get(j);
+            entries.put(data.getId(i), new AppliedEntry(data.getGeometryHash(i), data.getValue(i), data.getValueType(i), data.getMode(i), data.getDirection(i)));
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * The difference between the applied state and a new feed. Added and changed entries are
+     * stored as indices into the RoadData of the new feed.
+     */
+    public static class FeedDiff {
+
+        final TIntArrayList added = new TIntArrayList();
+        final TIntArrayList changed = new TIntArrayList();
+        final List<String> removed = new ArrayList<>();
+        int unchanged;
+
+        public TIntArrayList getAdded() {
+            return added;
+        }
+
+        public TIntArrayList getChanged() {
+            return changed;
+        }
+
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "added:" + added.size() + ", changed:" + changed.size() + ", removed:" + removed.size() + ", unchanged:" + unchanged;
+        }
+    }
+
+    private static class AppliedEntry {
+
+        final int geometryHash;
+        final double value;
+        final ValueType valueType;
+        final Mode mode;
+        final Direction direction;
+
+        AppliedEntry(int geometryHash, double value, ValueType valueType, Mode mode, Direction direction) {
+            this.geometryHash = geometryHash;
+            this.value = value;
+            this.valueType = valueType;
+            this.mode = mode;
+            this.direction = direction;
+        }
+    }
+}
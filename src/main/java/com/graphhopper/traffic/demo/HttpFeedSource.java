@@ -0,0 +1,166 @@
+package com.graphhopper.traffic.demo;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Fetches a feed via HTTP and reads it with a FeedParser.
+ * <p>
+ * The request is conditional: the ETag and Last-Modified of the previous response are sent
+ * back and OkHttp asks for gzip and decompresses it. The body is streamed into the parser and
+ * hashed on the way, it is never buffered as a whole, so an unchanged payload is parsed as well.
+ * If the server answers 304 or the hash equals the one of the previous payload, the previous
+ * RoadData instance is returned. The DataUpdater recognizes it and only refreshes the expiry of
+ * its speeds, nothing is matched or saved.
+ *
+ * @author Peter Karich
+ */
+public class HttpFeedSource implements FeedSource {
+
+    private final String name;
+    private final String url;
+    private final FeedParser parser;
+    private final FeedMetrics metrics;
+    private OkHttpClient client;
+    private String etag;
+    private String lastModified;
+    private String nextEtag;
+    private String nextLastModified;
+    private byte[] lastHash;
+    private RoadData lastData;
+
+    public HttpFeedSource(String name, String url, FeedParser parser, FeedMetrics metrics) {
+        this.name = name;
+        this.url = url;
+        this.parser = parser;
+        this.metrics = metrics;
+        setClient(new OkHttpClient(), 5000);
+    }
+
+    /**
+     * Uses the specified client with the specified connect and read timeout. Sources can share
+     * the connection pool of one client.
+     */
+    public HttpFeedSource setClient(OkHttpClient client, long timeoutMillis) {
+        this.client = client.newBuilder().
+                connectTimeout(timeoutMillis, TimeUnit.MILLISECONDS).
+                readTimeout(timeoutMillis, TimeUnit.MILLISECONDS).
+                build();
+        return this;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Sends the request and returns the body of the response as stream, which the caller has to
+     * close. The validators of the response are only kept by fetch once its body was parsed.
+     *
+     * @return the body of the response or null if the server answered 304
+     */
+    protected InputStream download() throws IOException {
+        Request.Builder builder = new Request.Builder().url(url);
+        // without a previous payload there is nothing to fall back to
+        if (lastData != null) {
+            if (etag != null) {
+                builder.header("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+        }
+
+        Response response = client.newCall(builder.build()).execute();
+        ResponseBody body = response.body();
+        if (response.code() == 304) {
+            body.close();
+            return null;
+        }
+        if (!response.isSuccessful()) {
+            body.close();
+            throw new IOException("Fetching " + url + " failed with status " + response.code());
+        }
+
+        nextEtag = response.header("ETag");
+        nextLastModified = response.header("Last-Modified");
+        return body.byteStream();
+    }
+
+    /**
+     * Parses the body while it is downloaded and hashes it on the way. If the hash equals the
+     * one of the previous payload, the previous RoadData instance is returned instead of the
+     * parsed one.
+     */
+    @Override
+    public RoadData fetch() throws IOException {
+        long start = System.nanoTime();
+        nextEtag = nextLastModified = null;
+        InputStream body = download();
+        metrics.getFetch().recordSince(start);
+        if (body == null) {
+            if (lastData == null) {
+                throw new IOException("Not modified, but there is no previous payload of " + url);
+            }
+            metrics.recordUnchangedFetch();
+            return lastData;
+        }
+
+        start = System.nanoTime();
+        MessageDigest digest = createDigest();
+        RoadData data = new RoadData();
+        try (InputStream in = new DigestInputStream(body, digest)) {
+            // parsers like Jackson close their source, but the rest has to be hashed
+            parser.parse(new FilterInputStream(in) {
+                @Override
+                public void close() {
+                }
+            }, data);
+            // the hash has to cover the whole payload, also what the parser did not read
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) >= 0) {
+            }
+        }
+        metrics.getParse().recordSince(start);
+        etag = nextEtag;
+        lastModified = nextLastModified;
+
+        byte[] hash = digest.digest();
+        if (lastData != null && Arrays.equals(hash, lastHash)) {
+            metrics.recordUnchangedFetch();
+            return lastData;
+        }
+
+        lastHash = hash;
+        lastData = data;
+        return data;
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + url;
+    }
+}
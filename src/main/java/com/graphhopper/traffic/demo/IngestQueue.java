@@ -0,0 +1,238 @@
+package com.graphhopper.traffic.demo;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded queue for pushed feeds and the polled feed state. One applier thread takes all queued
+ * batches at once, coalesces them per entry id (the latest batch wins) and feeds the result to the
+ * DataUpdater. Pushers never wait for a feed to be applied, and if the queue is full their batch
+ * is rejected.
+ * <p>
+ * The DataUpdater treats every feed as the complete state, so the applier feeds the latest polled
+ * data together with the pushed entries. A pushed entry overrides a polled one with the same id
+ * and stays in the state for the TTL of the DataUpdater after it was pushed last, then its speed
+ * expires like the one of a polled entry which left its feed. Without pushed entries the polled
+ * instance is fed as it is.
+ *
+ * @author Peter Karich
+ */
+public class IngestQueue {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final DataUpdater updater;
+    private final BlockingQueue<Batch> queue;
+    private final AtomicLong batchIds = new AtomicLong();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile long appliedBatchId;
+    private Thread applier;
+    // only used by the applier thread
+    private RoadData polled;
+    private final Map<String, Pushed> pushed = new LinkedHashMap<>();
+    // the state fed last, kept while nothing changed so the DataUpdater recognizes it
+    private RoadData collected;
+
+    public IngestQueue(DataUpdater updater, int capacity) {
+        this.updater = updater;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Queues pushed entries, they are added to the polled state.
+     *
+     * @return the id of the queued batch or -1 if the queue is full
+     */
+    public long offer(RoadData data) {
+        return offer(data, false);
+    }
+
+    /**
+     * Queues the merged data of all polled sources, it replaces the previous polled state.
+     *
+     * @return the id of the queued batch or -1 if the queue is full
+     */
+    public long offerPolled(RoadData data) {
+        return offer(data, true);
+    }
+
+    private long offer(RoadData data, boolean polled) {
+        long batchId = batchIds.incrementAndGet();
+        return queue.offer(new Batch(batchId, data, polled)) ? batchId : -1;
+    }
+
+    /**
+     * @return the id of the last batch that was fed to the DataUpdater
+     */
+    public long getAppliedBatchId() {
+        return appliedBatchId;
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public void start() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        applier = new Thread("IngestQueue") {
+            @Override
+            public void run() {
+                List<Batch> batches = new ArrayList<>();
+                while (running.get()) {
+                    try {
+                        batches.add(queue.take());
+                    } catch (InterruptedException ex) {
+                        logger.info("ingest thread stopped");
+                        break;
+                    }
+
+                    queue.drainTo(batches);
+                    try {
+                        apply(batches);
+                    } catch (Exception ex) {
+                        logger.error("Problem while applying batches " + batches.get(0).id + " to " + batches.get(batches.size() - 1).id, ex);
+                    }
+                    batches.clear();
+                }
+            }
+        };
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    public void stop() {
+        running.set(false);
+        if (applier != null) {
+            applier.interrupt();
+        }
+    }
+
+    private void apply(List<Batch> batches) {
+        int entries = 0;
+        for (Batch batch : batches) {
+            entries += batch.data.size();
+        }
+
+        RoadData merged = collect(batches, System.currentTimeMillis(), updater.getTTLMillis());
+        updater.feed(merged);
+        appliedBatchId = batches.get(batches.size() - 1).id;
+        if (batches.size() > 1) {
+            logger.info("Coalesced " + batches.size() + " batches with " + entries + " entries into " + merged.size() + " entries");
+        }
+    }
+
+    /**
+     * Adds the specified batches to the polled and pushed state, drops the pushed entries older
+     * than the specified TTL and returns the state to feed.
+     */
+    RoadData collect(List<Batch> batches, long now, long ttlMillis) {
+        for (Batch batch : batches) {
+            if (batch.polled) {
+                if (batch.data != polled) {
+                    polled = batch.data;
+                    collected = null;
+                }
+                continue;
+            }
+            collected = null;
+            for (int i = 0; i < batch.data.size(); i++) {
+                String id = batch.data.getId(i);
+                // keeps the order of the latest push
+                pushed.remove(id);
+                pushed.put(id, new Pushed(batch.data, i, now));
+            }
+        }
+
+        Iterator<Pushed> iter = pushed.values().iterator();
+        while (iter.hasNext()) {
+            if (now - iter.next().time > ttlMillis) {
+                iter.remove();
+                collected = null;
+            }
+        }
+
+        if (pushed.isEmpty()) {
+            return polled == null ? new RoadData() : polled;
+        }
+        if (collected != null) {
+            return collected;
+        }
+
+        int size = pushed.size() + (polled == null ? 0 : polled.size());
+        RoadData data = new RoadData(size, size * 4);
+        if (polled != null) {
+            for (int i = 0; i < polled.size(); i++) {
+                if (!pushed.containsKey(polled.getId(i))) {
+                    data.add(polled, i);
+                }
+            }
+        }
+        for (Pushed entry : pushed.values()) {
+            data.add(entry.data, entry.index);
+        }
+        collected = data;
+        return data;
+    }
+
+    /**
+     * Merges the specified feeds per entry id, later feeds win. The entries keep the order of
+     * their first occurrence.
+     */
+    static RoadData merge(List<RoadData> datas) {
+        if (datas.size() == 1) {
+            return datas.get(0);
+        }
+
+        // entry id -> index of the feed and index of the entry
+        Map<String, long[]> latest = new LinkedHashMap<>();
+        for (int d = 0; d < datas.size(); d++) {
+            RoadData data = datas.get(d);
+            for (int i = 0; i < data.size(); i++) {
+                latest.put(data.getId(i), new long[]{d, i});
+            }
+        }
+
+        RoadData merged = new RoadData(latest.size(), latest.size() * 4);
+        for (long[] position : latest.values()) {
+            merged.add(datas.get((int) position[0]), (int) position[1]);
+        }
+        return merged;
+    }
+
+    static class Batch {
+
+        final long id;
+        final RoadData data;
+        final boolean polled;
+
+        Batch(long id, RoadData data, boolean polled) {
+            this.id = id;
+            this.data = data;
+            this.polled = polled;
+        }
+    }
+
+    private static class Pushed {
+
+        final RoadData data;
+        final int index;
+        final long time;
+
+        Pushed(RoadData data, int index, long time) {
+            this.data = data;
+            this.index = index;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.routing.RoutingAlgorithmFactorySimple;
+import com.graphhopper.routing.lm.PrepareLandmarks;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Parameters;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the landmarks of the fastest weighting valid under traffic. Landmarks give lower bounds
+ * of the route weight as long as no edge becomes cheaper than during their preparation. Slower
+ * traffic speeds therefore never invalidate them and the landmarks which GraphHopper prepared
+ * and saved with the graph from the free-flow speeds are used as they are.
+ * <p>
+ * The DataUpdater calls check before it publishes a feed. If a traffic speed is above the bound
+ * of its edge direction, the flag speed or a speed raised before, the bound is raised and the
+ * landmarks are prepared again in the background. Until they are ready the A* queries use the
+ * beeline approximation only, which is always valid. Requests that fetched the previous landmarks
+ * before the check decide per overlay version of their weighting.
+ *
+ * @author Peter Karich
+ */
+public class LandmarkUpdater {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final int landmarks;
+    private final int activeLandmarks;
+    private final AtomicLong rebuilds = new AtomicLong();
+    private GraphHopper hopper;
+    private FlagEncoder encoder;
+    // the speeds above the flag speed the current or the next landmarks are prepared with
+    private SpeedOverlay bounds = SpeedOverlay.EMPTY;
+    private volatile Landmarks current;
+    private boolean rebuildQueued;
+    private ExecutorService executor;
+
+    public LandmarkUpdater(int landmarks, int activeLandmarks) {
+        if (activeLandmarks > landmarks) {
+            throw new IllegalArgumentException("active landmarks " + activeLandmarks + " cannot be more than landmarks " + landmarks);
+        }
+        this.landmarks = landmarks;
+        this.activeLandmarks = activeLandmarks;
+    }
+
+    /**
+     * Starts with the landmarks GraphHopper prepared for the fastest weighting, see
+     * prepare.lm.weightings. This has to be called before the first speed is published.
+     */
+    public synchronized void start(GraphHopper hopper) {
+        if (executor != null) {
+            return;
+        }
+
+        if (hopper.getLMFactoryDecorator().getPreparations().isEmpty()) {
+            throw new IllegalStateException("landmarks have to be prepared for the fastest weighting, see prepare.lm.weightings");
+        }
+
+        start(hopper, hopper.getEncodingManager().fetchEdgeEncoders().get(0), hopper.getLMFactoryDecorator().getPreparations().get(0),
+                Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "LandmarkUpdater");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                }));
+    }
+
+    /**
+     * Starts with the specified landmarks, the preparations of new landmarks run in the specified
+     * executor.
+     */
+    synchronized void start(GraphHopper hopper, FlagEncoder encoder, PrepareLandmarks prepare, ExecutorService executor) {
+        this.hopper = hopper;
+        this.encoder = encoder;
+        this.current = new Landmarks(prepare);
+        this.executor = executor;
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Raises the bounds for all speeds of the specified updates that are above them and starts
+     * the preparation of new landmarks. The current landmarks are dropped at once, so the
+     * updates can be published right after this call.
+     *
+     * @param version the version of the overlay the updates will be published with
+     * @return the number of raised edge directions
+     */
+    public synchronized int check(Graph graph, EdgeUpdates updates, long version) {
+        if (executor == null) {
+            return 0;
+        }
+
+        EdgeUpdates raised = new EdgeUpdates(0);
+        for (int i = 0; i < updates.size(); i++) {
+            double speed = updates.getSpeed(i);
+            // a revert goes back to the flag speed
+            if (Double.isNaN(speed)) {
+                continue;
+            }
+
+            int edgeKey = updates.getEdgeKey(i);
+            double bound = bounds.hasSpeed(edgeKey) ? bounds.getSpeed(edgeKey) : DataUpdater.getFlagSpeed(encoder, graph, edgeKey);
+            if ((float) speed > (float) bound) {
+                raised.add(edgeKey, speed);
+            }
+        }
+
+        if (raised.size() == 0) {
+            return 0;
+        }
+
+        bounds = bounds.apply(raised);
+        Landmarks tmp = current;
+        if (tmp != null) {
+            tmp.invalidFrom = Math.min(tmp.invalidFrom, version);
+            current = null;
+        }
+        if (!rebuildQueued) {
+            rebuildQueued = true;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        rebuild();
+                    } catch (Exception ex) {
+                        logger.error("Problem while preparing landmarks", ex);
+                    }
+                }
+            });
+        }
+        logger.info("Raised the landmark bounds of " + raised.size() + " edge directions above their flag speed, preparing landmarks again");
+        return raised.size();
+    }
+
+    private void rebuild() {
+        SpeedOverlay tmpBounds;
+        synchronized (this) {
+            rebuildQueued = false;
+            tmpBounds = bounds;
+        }
+
+        long start = System.nanoTime();
+        TrafficWeighting weighting = new TrafficWeighting(encoder, new HintsMap("fastest").setVehicle(encoder.toString()), tmpBounds);
+        PrepareLandmarks prepare = new PrepareLandmarks(new RAMDirectory(), hopper.getGraphHopperStorage(), weighting,
+                TraversalMode.NODE_BASED, landmarks, activeLandmarks);
+        prepare.doWork();
+        rebuilds.incrementAndGet();
+        synchronized (this) {
+            // otherwise a feed raised further bounds and the next rebuild is queued
+            if (tmpBounds == bounds) {
+                current = new Landmarks(prepare);
+            }
+        }
+        logger.info("prepared landmarks for bounds " + tmpBounds + ", took " + (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
+    /**
+     * The landmarks are only prepared for the fastest weighting of the current traffic. Requests
+     * with a departure time use the SpeedProfiles, whose rounded speeds are not covered.
+     */
+    public boolean isCompatible(HintsMap map) {
+        return isCovered(map) && !map.getBool(Parameters.Landmark.DISABLE, false) && map.get(TrafficGraphHopper.DEPARTURE_TIME, "").isEmpty();
+    }
+
+    /**
+     * @return true if the request has the weighting and vehicle of the landmarks, regardless of
+     * its other hints. GraphHopper would answer it with its free-flow landmarks, which are not
+     * valid under traffic.
+     */
+    public boolean isCovered(HintsMap map) {
+        if (executor == null) {
+            return false;
+        }
+
+        String weighting = map.getWeighting();
+        if (!weighting.isEmpty() && !"fastest".equalsIgnoreCase(weighting)) {
+            return false;
+        }
+
+        return map.getVehicle().isEmpty() || encoder.toString().equalsIgnoreCase(map.getVehicle());
+    }
+
+    /**
+     * @return the factory with the current landmarks or without landmarks while new ones are
+     * prepared
+     */
+    public RoutingAlgorithmFactory getAlgorithmFactory() {
+        final Landmarks landmarks = current;
+        final RoutingAlgorithmFactory simple = new RoutingAlgorithmFactorySimple();
+        if (landmarks == null) {
+            return simple;
+        }
+
+        return new RoutingAlgorithmFactory() {
+            @Override
+            public RoutingAlgorithm createAlgo(Graph graph, AlgorithmOptions opts) {
+                RoutingAlgorithm algo = simple.createAlgo(graph, opts);
+                if (!landmarks.isValid(opts.getWeighting())) {
+                    return algo;
+                }
+                return landmarks.prepare.getDecoratedAlgorithm(graph, algo, opts);
+            }
+        };
+    }
+
+    public boolean isValid() {
+        return current != null;
+    }
+
+    public long getRebuilds() {
+        return rebuilds.get();
+    }
+
+    Landmarks getCurrent() {
+        return current;
+    }
+
+    static class Landmarks {
+
+        final PrepareLandmarks prepare;
+        // the first overlay version with a speed above the bounds of these landmarks
+        volatile long invalidFrom = Long.MAX_VALUE;
+
+        Landmarks(PrepareLandmarks prepare) {
+            this.prepare = prepare;
+        }
+
+        boolean isValid(Weighting weighting) {
+            long tmp = invalidFrom;
+            if (tmp == Long.MAX_VALUE) {
+                return true;
+            }
+            return weighting instanceof TrafficWeighting && ((TrafficWeighting) weighting).getOverlay().getVersion() < tmp;
+        }
+    }
+}
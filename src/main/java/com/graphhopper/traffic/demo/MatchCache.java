@@ -0,0 +1,106 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.storage.Graph;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers the edges every feed entry was matched to. The feed repeats the same segments with
+ * the same geometry every cycle, so a cached match is reused as long as the geometry hash is
+ * unchanged and the graph was not reloaded. Entries without a match are cached too.
+ * <p>
+ * The matches of ids which left the feed are dropped via remove and retain, so feeds with
+ * rotating ids do not grow the cache.
+ *
+ * @author Peter Karich
+ */
+public class MatchCache {
+
+    private final Map<String, CachedMatch> matches = new HashMap<>();
+    private Graph graph;
+
+    /**
+     * Drops all matches if they were made against a different graph instance.
+     */
+    public void checkGraph(Graph graph) {
+        if (this.graph != graph) {
+            matches.clear();
+            this.graph = graph;
+        }
+    }
+
+    /**
+     * @return the cached match or null if the entry is unknown or its geometry changed
+     */
+    public EdgeMatch get(String id, int geometryHash) {
+        CachedMatch cached = matches.get(id);
+        if (cached == null || cached.geometryHash != geometryHash) {
+            return null;
+        }
+
+        return cached.match;
+    }
+
+    public void put(String id, int geometryHash, EdgeMatch match) {
+        matches.put(id, new CachedMatch(geometryHash, match));
+    }
+
+    public void remove(String id) {
+        matches.remove(id);
+    }
+
+    /**
+     * Drops the matches of all ids which are not in the specified data.
+     *
+     * @return the number of dropped matches
+     */
+    public int retain(RoadData data) {
+        Set<String> ids = new HashSet<>(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            ids.add(data.getId(i));
+        }
+
+        int removed = 0;
+        Iterator<String> iter = matches.keySet().iterator();
+        while (iter.hasNext()) {
+            if (!ids.contains(iter.next())) {
+                iter.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public void forEach(Visitor visitor) {
+        for (Map.Entry<String, CachedMatch> entry : matches.entrySet()) {
+            visitor.visit(entry.getKey(), entry.getValue().geometryHash, entry.getValue().match);
+        }
+    }
+
+    public int size() {
+        return matches.size();
+    }
+
+    public void clear() {
+        matches.clear();
+    }
+
+    public interface Visitor {
+
+        void visit(String id, int geometryHash, EdgeMatch match);
+    }
+
+    private static class CachedMatch {
+
+        final int geometryHash;
+        final EdgeMatch match;
+
+        CachedMatch(int geometryHash, EdgeMatch match) {
+            this.geometryHash = geometryHash;
+            this.match = match;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.graphhopper.traffic.demo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.graphhopper.http.GraphHopperServlet;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Map;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Returns the FeedMetrics and the state of the ingest queue, the CHRebuilder and the
+ * LandmarkUpdater as JSON. Only requests from the local machine are answered.
+ *
+ * @author Peter Karich
+ */
+public class MetricsServlet extends GraphHopperServlet {
+
+    @Inject
+    @Named("prettyprint")
+    private ObjectMapper mapper;
+
+    @Inject
+    private DataUpdater updater;
+
+    @Inject
+    private IngestQueue ingestQueue;
+
+    @Inject
+    private CHRebuilder chRebuilder;
+
+    @Inject
+    private LandmarkUpdater landmarks;
+
+    @Inject
+    private ReplicationLog replicationLog;
+
+    @Override
+    public void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+        res.setContentType("application/json");
+        if (!InetAddress.getByName(req.getRemoteAddr()).isLoopbackAddress()) {
+            res.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            mapper.writeValue(res.getOutputStream(), Collections.singletonMap("message", "metrics are only available locally"));
+            return;
+        }
+
+        Map<String, Object> map = updater.getMetrics().toMap();
+        map.put("overlay_version", updater.getOverlay().get().getVersion());
+        map.put("ingest_queue_size", ingestQueue.size());
+        map.put("ingest_applied_batch_id", ingestQueue.getAppliedBatchId());
+        map.put("ch_overlay_version", chRebuilder.getVersion());
+        map.put("ch_last_rebuild_ms", chRebuilder.getLastRebuildMillis());
+        map.put("landmarks_valid", landmarks.isValid());
+        map.put("landmarks_rebuilds", landmarks.getRebuilds());
+        map.put("replication_log_version", replicationLog.getLatestVersion());
+        map.put("replication_leader_version", updater.getLeaderVersion());
+        RouteCache routeCache = updater.getRouteCache();
+        if (routeCache != null) {
+            map.put("route_cache_size", routeCache.size());
+            map.put("route_cache_hits", routeCache.getHits());
+            map.put("route_cache_misses", routeCache.getMisses());
+            map.put("route_cache_invalidated", routeCache.getInvalidated());
+        }
+        mapper.writeValue(res.getOutputStream(), map);
+    }
+}
@@ -0,0 +1,36 @@
+package com.graphhopper.traffic.demo;
+
+/**
+ * How the value of a RoadEntry is applied to a road.
+ *
+ * @author Peter Karich
+ */
+public enum Mode {
+    /**
+     * Replaces the value of the road
+     */
+    REPLACE,
+    /**
+     * Reverts the road to its original value, the value of the entry is only informational
+     */
+    RESET;
+
+    private final String name = name().toLowerCase();
+
+    /**
+     * @throws IllegalArgumentException if the specified string is not a known mode
+     */
+    public static Mode fromString(String str) {
+        for (Mode mode : values()) {
+            if (mode.name.equalsIgnoreCase(str)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("currently no other mode than 'replace' and 'reset' is supported but was '" + str + "'");
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
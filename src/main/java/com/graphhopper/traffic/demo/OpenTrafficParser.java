@@ -0,0 +1,160 @@
+package com.graphhopper.traffic.demo;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming parser for the open traffic data of Cologne. The features are read one after the
+ * other directly from the stream and every path of a feature is added as entry to the RoadData.
+ * The coordinates of a feature are collected in primitive buffers which are reused for all
+ * features.
+ *
+ * @author Peter Karich
+ */
+public class OpenTrafficParser implements FeedParser {
+
+    private final JsonFactory factory;
+
+    public OpenTrafficParser() {
+        this(new JsonFactory());
+    }
+
+    public OpenTrafficParser(JsonFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public void parse(InputStream is, RoadData data) throws IOException {
+        try (JsonParser jp = factory.createParser(is)) {
+            if (jp.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Traffic data has to start with an object but was " + jp.getCurrentToken());
+            }
+
+            FeatureBuffer buffer = new FeatureBuffer();
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String field = jp.getCurrentName();
+                if (jp.nextToken() == JsonToken.START_ARRAY && "features".equals(field)) {
+                    while (jp.nextToken() == JsonToken.START_OBJECT) {
+                        buffer.clear();
+                        parseFeature(jp, buffer);
+                        emit(buffer, data);
+                    }
+                } else {
+                    jp.skipChildren();
+                }
+            }
+        }
+    }
+
+    private void parseFeature(JsonParser jp, FeatureBuffer buffer) throws IOException {
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            String field = jp.getCurrentName();
+            JsonToken token = jp.nextToken();
+            if (token == JsonToken.START_OBJECT && "attributes".equals(field)) {
+                parseAttributes(jp, buffer);
+            } else if (token == JsonToken.START_OBJECT && "geometry".equals(field)) {
+                parseGeometry(jp, buffer);
+            } else {
+                jp.skipChildren();
+            }
+        }
+    }
+
+    private void parseAttributes(JsonParser jp, FeatureBuffer buffer) throws IOException {
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            String field = jp.getCurrentName();
+            JsonToken token = jp.nextToken();
+            if ("IDENTIFIER".equals(field)) {
+                buffer.id = token == JsonToken.VALUE_NULL ? null : jp.getValueAsString();
+            } else if ("AUSLASTUNG".equals(field)) {
+                buffer.streetUsage = token == JsonToken.VALUE_NULL ? -1 : jp.getValueAsInt(-1);
+            } else {
+                jp.skipChildren();
+            }
+        }
+    }
+
+    private void parseGeometry(JsonParser jp, FeatureBuffer buffer) throws IOException {
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            String field = jp.getCurrentName();
+            if (jp.nextToken() != JsonToken.START_ARRAY || !"paths".equals(field)) {
+                jp.skipChildren();
+                continue;
+            }
+
+            while (jp.nextToken() == JsonToken.START_ARRAY) {
+                while (jp.nextToken() == JsonToken.START_ARRAY) {
+                    // geo json order
+                    jp.nextToken();
+                    double lon = jp.getDoubleValue();
+                    jp.nextToken();
+                    double lat = jp.getDoubleValue();
+                    // ignore a possible elevation
+                    while (jp.nextToken() != JsonToken.END_ARRAY) {
+                        jp.skipChildren();
+                    }
+                    buffer.lats.add(lat);
+                    buffer.lons.add(lon);
+                }
+                buffer.pathEnds.add(buffer.lats.size());
+            }
+        }
+    }
+
+    private void emit(FeatureBuffer buffer, RoadData data) {
+        // according to the docs http://www.offenedaten-koeln.de/dataset/verkehrskalender-der-stadt-k%C3%B6ln
+        // there are only three indications 0='ok', 1='slow' and 2='traffic jam'
+        final int streetUsage = buffer.streetUsage;
+        if (streetUsage != 0 && streetUsage != 1 && streetUsage != 2) {
+            return;
+        }
+
+        final double speed;
+        final Mode mode;
+        if (streetUsage == 1) {
+            speed = 20;
+            mode = Mode.REPLACE;
+        } else if (streetUsage == 2) {
+            speed = 5;
+            mode = Mode.REPLACE;
+        } else {
+            // revert a previous traffic jam to the original speed, the value is only for the UI
+            speed = 45;
+            mode = Mode.RESET;
+        }
+
+        int pathStart = 0;
+        for (int pathIndex = 0; pathIndex < buffer.pathEnds.size(); pathIndex++) {
+            int pathEnd = buffer.pathEnds.get(pathIndex);
+            if (pathEnd > pathStart) {
+                for (int i = pathStart; i < pathEnd; i++) {
+                    data.addPoint(buffer.lats.get(i), buffer.lons.get(i));
+                }
+                data.addEntry(buffer.id + "_" + pathIndex, speed, ValueType.SPEED, mode);
+            }
+            pathStart = pathEnd;
+        }
+    }
+
+    private static class FeatureBuffer {
+
+        final TDoubleArrayList lats = new TDoubleArrayList();
+        final TDoubleArrayList lons = new TDoubleArrayList();
+        final TIntArrayList pathEnds = new TIntArrayList();
+        String id;
+        int streetUsage;
+
+        void clear() {
+            lats.resetQuick();
+            lons.resetQuick();
+            pathEnds.resetQuick();
+            id = null;
+            streetUsage = -1;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PMap;
+
+/**
+ * The fastest weighting with the typical speeds of SpeedProfiles for the quarter hour of the
+ * departure. Edges without a profile for that bucket use the speed of the edge flags, edges which
+ * are typically closed in that bucket are blocked.
+ *
+ * @author Peter Karich
+ */
+public class ProfileWeighting extends TrafficWeighting {
+
+    private final SpeedProfiles profiles;
+    private final int bucket;
+
+    public ProfileWeighting(FlagEncoder encoder, PMap map, SpeedProfiles profiles, int bucket) {
+        // the current traffic is not used for a later departure
+        super(encoder, map, SpeedOverlay.EMPTY);
+        this.profiles = profiles;
+        this.bucket = bucket;
+    }
+
+    @Override
+    protected double getTrafficSpeed(EdgeIteratorState edge, boolean reverse) {
+        return profiles.getSpeed(getOriginalEdgeKey(edge, reverse), bucket);
+    }
+}
@@ -0,0 +1,126 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.storage.Graph;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes this node a follower: it long polls the ReplicationServlet of the leader and applies the
+ * received speeds via DataUpdater.applyReplicated. The follower neither fetches nor matches
+ * feeds itself. While the leader is not reachable the last applied speeds are kept and the
+ * polling backs off exponentially.
+ *
+ * @author Peter Karich
+ */
+public class ReplicationClient {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final String leaderUrl;
+    private final DataUpdater updater;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private long waitMillis = 25_000;
+    private long minBackoffMillis = 1000;
+    private long maxBackoffMillis = 60_000;
+    private OkHttpClient client;
+    private Thread poller;
+
+    public ReplicationClient(String leaderUrl, DataUpdater updater) {
+        this.leaderUrl = leaderUrl.endsWith("/") ? leaderUrl.substring(0, leaderUrl.length() - 1) : leaderUrl;
+        this.updater = updater;
+        setWaitMillis(waitMillis);
+    }
+
+    /**
+     * Sets how long the leader holds a poll without new version.
+     */
+    public ReplicationClient setWaitMillis(long waitMillis) {
+        this.waitMillis = waitMillis;
+        this.client = new OkHttpClient.Builder().
+                connectTimeout(5000, TimeUnit.MILLISECONDS).
+                readTimeout(waitMillis + 10_000, TimeUnit.MILLISECONDS).
+                build();
+        return this;
+    }
+
+    public ReplicationClient setBackoffMillis(long minBackoffMillis, long maxBackoffMillis) {
+        this.minBackoffMillis = minBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        return this;
+    }
+
+    public String getLeaderUrl() {
+        return leaderUrl;
+    }
+
+    public void start(final GraphHopper hopper) {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        poller = new Thread("ReplicationClient") {
+            @Override
+            public void run() {
+                int failures = 0;
+                while (running.get()) {
+                    try {
+                        poll(hopper.getGraphHopperStorage());
+                        failures = 0;
+                    } catch (Exception ex) {
+                        failures++;
+                        logger.error("Problem while replicating from " + leaderUrl + ", failures:" + failures, ex);
+                        try {
+                            Thread.sleep(Math.min(maxBackoffMillis, minBackoffMillis << Math.min(failures - 1, 30)));
+                        } catch (InterruptedException iex) {
+                            break;
+                        }
+                    }
+                }
+                logger.info("replication thread stopped");
+            }
+        };
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    public void stop() {
+        running.set(false);
+        if (poller != null) {
+            poller.interrupt();
+        }
+    }
+
+    /**
+     * Polls the leader once and applies the received batch.
+     *
+     * @return true if a batch was applied
+     */
+    boolean poll(Graph graph) throws IOException {
+        Request request = new Request.Builder().
+                url(leaderUrl + "/replication?since=" + updater.getLeaderVersion() + "&wait_ms=" + waitMillis).
+                header("Accept", ReplicationLog.CONTENT_TYPE).
+                build();
+        Response response = client.newCall(request).execute();
+        ReplicationLog.Batch batch;
+        try (ResponseBody body = response.body()) {
+            if (response.code() == 204) {
+                return false;
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("Polling " + leaderUrl + " failed with status " + response.code());
+            }
+
+            batch = ReplicationLog.read(body.byteStream(), graph.getNodes(), graph.getAllEdges().length());
+        }
+
+        updater.applyReplicated(batch);
+        return true;
+    }
+}
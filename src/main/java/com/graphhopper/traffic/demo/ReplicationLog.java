@@ -0,0 +1,209 @@
+package com.graphhopper.traffic.demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The changes the DataUpdater of the leader published, one delta of resolved (edgeKey, speed)
+ * writes per overlay version. Followers poll with the last version they applied and get the
+ * merged deltas after it, or the whole overlay if the log does not reach back that far, e.g.
+ * after a restart of the follower or the leader.
+ * <p>
+ * Batches are transferred in a binary format: the magic bytes 'R' 'L', a version byte, a byte
+ * which is 1 for the whole overlay, the overlay version, the node and edge count of the graph,
+ * the write count and per write the edge key as int and the speed as float, NaN for a revert.
+ *
+ * @author Peter Karich
+ */
+public class ReplicationLog {
+
+    public static final String CONTENT_TYPE = "application/x-traffic-replication";
+    private static final int MAGIC = ('R' << 8) | 'L';
+    private static final int FORMAT_VERSION = 1;
+    private final TrafficOverlay overlay;
+    private final int capacity;
+    private final Deque<Delta> deltas = new ArrayDeque<>();
+    // the overlay version before the oldest delta
+    private long baseVersion;
+    private long latestVersion;
+
+    public ReplicationLog(TrafficOverlay overlay, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("replication log size has to be at least 1 but was " + capacity);
+        }
+        this.overlay = overlay;
+        this.capacity = capacity;
+        this.baseVersion = this.latestVersion = overlay.get().getVersion();
+    }
+
+    /**
+     * Appends the updates which were published with the specified overlay version. The versions
+     * have to be consecutive, otherwise reset has to be called.
+     */
+    public synchronized void append(long version, EdgeUpdates updates) {
+        if (version != latestVersion + 1) {
+            throw new IllegalArgumentException("version " + version + " does not follow " + latestVersion);
+        }
+
+        deltas.addLast(new Delta(version, updates));
+        latestVersion = version;
+        while (deltas.size() > capacity) {
+            baseVersion = deltas.removeFirst().version;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Drops all deltas, e.g. because an overlay was restored. Followers get the whole overlay.
+     */
+    public synchronized void reset(long version) {
+        deltas.clear();
+        baseVersion = latestVersion = version;
+        notifyAll();
+    }
+
+    public synchronized long getLatestVersion() {
+        return latestVersion;
+    }
+
+    /**
+     * Waits up to waitMillis for a version after the specified one.
+     *
+     * @param since the last version the follower applied
+     * @return the batch with all changes after since or null if there was none within waitMillis
+     */
+    public synchronized Batch poll(long since, long waitMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        // a follower ahead of the leader needs the whole overlay
+        while (since == latestVersion) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+            wait(remaining);
+        }
+
+        if (since >= baseVersion && since < latestVersion) {
+            EdgeUpdates merged = new EdgeUpdates(0);
+            for (Delta delta : deltas) {
+                if (delta.version > since) {
+                    for (int i = 0; i < delta.updates.size(); i++) {
+                        merged.add(delta.updates.getEdgeKey(i), delta.updates.getSpeed(i));
+                    }
+                }
+            }
+            return new Batch(false, latestVersion, merged);
+        }
+
+        SpeedOverlay snapshot = overlay.get();
+        EdgeUpdates all = new EdgeUpdates(0);
+        for (int edgeKey = 0; edgeKey < snapshot.size(); edgeKey++) {
+            if (snapshot.hasSpeed(edgeKey)) {
+                all.add(edgeKey, snapshot.getSpeed(edgeKey));
+            }
+        }
+        // the overlay can already be one version ahead of the log, applying its delta again is harmless
+        return new Batch(true, latestVersion, all);
+    }
+
+    public static void write(Batch batch, int nodes, int edges, OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 8192));
+        out.writeShort(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(batch.full ? 1 : 0);
+        out.writeLong(batch.version);
+        out.writeInt(nodes);
+        out.writeInt(edges);
+        out.writeInt(batch.updates.size());
+        for (int i = 0; i < batch.updates.size(); i++) {
+            out.writeInt(batch.updates.getEdgeKey(i));
+            out.writeFloat((float) batch.updates.getSpeed(i));
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a batch and checks that it was written for a graph with the specified node and edge
+     * count, otherwise the edge keys would point to other roads.
+     */
+    public static Batch read(InputStream is, int nodes, int edges) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is, 8192));
+        int magic = in.readUnsignedShort();
+        if (magic != MAGIC) {
+            throw new IllegalArgumentException("not a replication stream, magic " + magic);
+        }
+        int formatVersion = in.readUnsignedByte();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IllegalArgumentException("unsupported replication version " + formatVersion);
+        }
+
+        boolean full = in.readUnsignedByte() == 1;
+        long version = in.readLong();
+        int leaderNodes = in.readInt();
+        int leaderEdges = in.readInt();
+        if (leaderNodes != nodes || leaderEdges != edges) {
+            throw new IllegalStateException("the graph of the leader has " + leaderNodes + " nodes and " + leaderEdges
+                    + " edges, but this graph " + nodes + " and " + edges);
+        }
+
+        int count = in.readInt();
+        // do not trust the count for the initial capacity
+        EdgeUpdates updates = new EdgeUpdates(Math.min(count, 1 << 16));
+        for (int i = 0; i < count; i++) {
+            int edgeKey = in.readInt();
+            float speed = in.readFloat();
+            if (edgeKey < 0 || edgeKey >= 2 * edges) {
+                throw new IllegalArgumentException("edge key " + edgeKey + " out of range");
+            }
+            updates.add(edgeKey, speed);
+        }
+        return new Batch(full, version, updates);
+    }
+
+    /**
+     * The changes up to an overlay version of the leader. If full is true the updates contain
+     * all speeds of the overlay and edge keys without an update have no speed.
+     */
+    public static class Batch {
+
+        final boolean full;
+        final long version;
+        final EdgeUpdates updates;
+
+        Batch(boolean full, long version, EdgeUpdates updates) {
+            this.full = full;
+            this.version = version;
+            this.updates = updates;
+        }
+
+        public boolean isFull() {
+            return full;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public EdgeUpdates getUpdates() {
+            return updates;
+        }
+    }
+
+    private static class Delta {
+
+        final long version;
+        final EdgeUpdates updates;
+
+        Delta(long version, EdgeUpdates updates) {
+            this.version = version;
+            this.updates = updates;
+        }
+    }
+}
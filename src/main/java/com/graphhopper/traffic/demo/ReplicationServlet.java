@@ -0,0 +1,58 @@
+package com.graphhopper.traffic.demo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.http.GraphHopperServlet;
+import com.graphhopper.storage.Graph;
+import java.io.IOException;
+import java.util.Collections;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The long poll of the followers: since is the last overlay version a follower applied and the
+ * response waits up to wait_ms for a newer version. It is 204 if there was none, otherwise the
+ * ReplicationLog batch in its binary format.
+ *
+ * @author Peter Karich
+ */
+public class ReplicationServlet extends GraphHopperServlet {
+
+    private static final long MAX_WAIT_MILLIS = 60_000;
+
+    @Inject
+    private ObjectMapper mapper;
+
+    @Inject
+    private ReplicationLog log;
+
+    @Inject
+    private GraphHopper hopper;
+
+    @Override
+    public void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
+        long since = getLongParam(req, "since", -1);
+        long waitMillis = Math.max(0, Math.min(MAX_WAIT_MILLIS, getLongParam(req, "wait_ms", 25_000)));
+        ReplicationLog.Batch batch;
+        try {
+            batch = log.poll(since, waitMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            res.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            res.setContentType("application/json");
+            mapper.writeValue(res.getOutputStream(), Collections.singletonMap("message", "interrupted"));
+            return;
+        }
+
+        if (batch == null) {
+            res.setStatus(HttpServletResponse.SC_NO_CONTENT);
+            return;
+        }
+
+        Graph graph = hopper.getGraphHopperStorage();
+        res.setContentType(ReplicationLog.CONTENT_TYPE);
+        ReplicationLog.write(batch, graph.getNodes(), graph.getAllEdges().length(), res.getOutputStream());
+    }
+}
@@ -1,11 +1,235 @@
 package com.graphhopper.traffic.demo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
+ * Stores the road entries column by column: the coordinates of all entries in two flat arrays
+ * with the end offset per entry, the mode, the direction and the value type as enum ordinal
+ * bytes. A RoadEntry object is only created on demand via get.
+ * <p>
+ * Points are added with addPoint and belong to the entry created with the next call of addEntry.
  *
  * @author Peter Karich
  */
-public class RoadData extends ArrayList<RoadEntry> {
-    
+public class RoadData implements Iterable<RoadEntry> {
+
+    private static final ValueType[] VALUE_TYPES = ValueType.values();
+    private static final Mode[] MODES = Mode.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private String[] ids;
+    private double[] values;
+    private byte[] valueTypes;
+    private byte[] modes;
+    private byte[] directions;
+    private int[] pointEnds;
+    private int size;
+    private double[] lats;
+    private double[] lons;
+    private int pointCount;
+
+    public RoadData() {
+        this(16, 64);
+    }
+
+    public RoadData(int entryCapacity, int pointCapacity) {
+        entryCapacity = Math.max(4, entryCapacity);
+        pointCapacity = Math.max(4, pointCapacity);
+        ids = new String[entryCapacity];
+        values = new double[entryCapacity];
+        valueTypes = new byte[entryCapacity];
+        modes = new byte[entryCapacity];
+        directions = new byte[entryCapacity];
+        pointEnds = new int[entryCapacity];
+        lats = new double[pointCapacity];
+        lons = new double[pointCapacity];
+    }
+
+    public void addPoint(double lat, double lon) {
+        if (pointCount == lats.length) {
+            lats = Arrays.copyOf(lats, pointCount * 2);
+            lons = Arrays.copyOf(lons, pointCount * 2);
+        }
+
+        lats[pointCount] = lat;
+        lons[pointCount] = lon;
+        pointCount++;
+    }
+
+    /**
+     * @return false for a negative, NaN or infinite value, which would be a negative or undefined
+     * edge weight
+     */
+    public static boolean isValidValue(double value) {
+        return value >= 0 && !Double.isInfinite(value);
+    }
+
+    /**
+     * Creates a new entry for both directions with all points added since the previous entry.
+     */
+    public void addEntry(String id, double value, ValueType valueType, Mode mode) {
+        addEntry(id, value, valueType, mode, Direction.BOTH);
+    }
+
+    /**
+     * Creates a new entry with all points added since the previous entry.
+     */
+    public void addEntry(String id, double value, ValueType valueType, Mode mode, Direction direction) {
+        if (size == ids.length) {
+            int newCapacity = size * 2;
+            ids = Arrays.copyOf(ids, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+            valueTypes = Arrays.copyOf(valueTypes, newCapacity);
+            modes = Arrays.copyOf(modes, newCapacity);
+            directions = Arrays.copyOf(directions, newCapacity);
+            pointEnds = Arrays.copyOf(pointEnds, newCapacity);
+        }
+
+        ids[size] = id;
+        values[size] = value;
+        valueTypes[size] = (byte) valueType.ordinal();
+        modes[size] = (byte) mode.ordinal();
+        directions[size] = (byte) direction.ordinal();
+        pointEnds[size] = pointCount;
+        size++;
+    }
+
+    /**
+     * Copies the specified entry of the other RoadData.
+     */
+    public void add(RoadData other, int index) {
+        int end = other.getPointEnd(index);
+        for (int i = other.getPointStart(index); i < end; i++) {
+            addPoint(other.lats[i], other.lons[i]);
+        }
+        addEntry(other.ids[index], other.values[index], VALUE_TYPES[other.valueTypes[index]], MODES[other.modes[index]],
+                DIRECTIONS[other.directions[index]]);
+    }
+
+    public void add(RoadEntry entry) {
+        for (Point point : entry.getPoints()) {
+            addPoint(point.lat, point.lon);
+        }
+        addEntry(entry.getId(), entry.getValue(), ValueType.fromString(entry.getValueType()), Mode.fromString(entry.getMode()),
+                Direction.fromString(entry.getDirection()));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String getId(int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    public double getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    public ValueType getValueType(int index) {
+        checkIndex(index);
+        return VALUE_TYPES[valueTypes[index]];
+    }
+
+    public Mode getMode(int index) {
+        checkIndex(index);
+        return MODES[modes[index]];
+    }
+
+    public Direction getDirection(int index) {
+        checkIndex(index);
+        return DIRECTIONS[directions[index]];
+    }
+
+    /**
+     * @return the index of the first point of the specified entry
+     */
+    public int getPointStart(int index) {
+        checkIndex(index);
+        return index == 0 ? 0 : pointEnds[index - 1];
+    }
+
+    /**
+     * @return the index after the last point of the specified entry
+     */
+    public int getPointEnd(int index) {
+        checkIndex(index);
+        return pointEnds[index];
+    }
+
+    public double getLat(int pointIndex) {
+        return lats[pointIndex];
+    }
+
+    public double getLon(int pointIndex) {
+        return lons[pointIndex];
+    }
+
+    public List<Point> getPoints(int index) {
+        int end = getPointEnd(index);
+        List<Point> points = new ArrayList<>(end - getPointStart(index));
+        for (int i = getPointStart(index); i < end; i++) {
+            points.add(new Point(lats[i], lons[i]));
+        }
+        return points;
+    }
+
+    public int getGeometryHash(int index) {
+        int hash = 1;
+        int end = getPointEnd(index);
+        for (int i = getPointStart(index); i < end; i++) {
+            hash = 31 * hash + Double.hashCode(lats[i]);
+            hash = 31 * hash + Double.hashCode(lons[i]);
+        }
+        return hash;
+    }
+
+    /**
+     * Creates a RoadEntry object for the specified entry.
+     */
+    public RoadEntry get(int index) {
+        RoadEntry entry = new RoadEntry(getId(index), getPoints(index), getValue(index), getValueType(index).toString(), getMode(index).toString());
+        entry.setDirection(getDirection(index).toString());
+        return entry;
+    }
+
+    @Override
+    public Iterator<RoadEntry> iterator() {
+        return new Iterator<RoadEntry>() {
+            int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public RoadEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(index++);
+            }
+        };
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "entries:" + size + ", points:" + pointCount;
+    }
 }
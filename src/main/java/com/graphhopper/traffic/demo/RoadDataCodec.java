@@ -0,0 +1,216 @@
+package com.graphhopper.traffic.demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compact binary format for RoadData, an alternative to the JSON of the ObjectMapper.
+ * <p>
+ * Layout: the magic bytes 'R' 'D', a version byte, the entry count and the point count. Then per
+ * entry: the id as UTF-8 with its length + 1 (0 means null), the value type, the mode and the
+ * direction as ordinal bytes, the value as float, the number of points and the points.
+ * Coordinates are stored in micro degrees as the difference to the previous point, also across
+ * entries. Counts, lengths and coordinates are varints, coordinates zigzag encoded. Version 1
+ * without the direction byte is still read.
+ *
+ * @author Peter Karich
+ */
+public class RoadDataCodec {
+
+    public static final String CONTENT_TYPE = "application/x-roaddata";
+    private static final int MAGIC = ('R' << 8) | 'D';
+    private static final int VERSION = 2;
+    static final int MAX_ID_LENGTH = 64 * 1024;
+    private static final double FACTOR = 1e6;
+    private static final ValueType[] VALUE_TYPES = ValueType.values();
+    private static final Mode[] MODES = Mode.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * @return true if the specified Content-Type or Accept header asks for the binary format
+     */
+    public static boolean isRequested(String header) {
+        return header != null && header.contains(CONTENT_TYPE);
+    }
+
+    public static void write(RoadData data, OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 8192));
+        out.writeShort(MAGIC);
+        out.writeByte(VERSION);
+        writeVarInt(out, data.size());
+        writeVarInt(out, data.isEmpty() ? 0 : data.getPointEnd(data.size() - 1));
+        int prevLat = 0, prevLon = 0;
+        for (int i = 0; i < data.size(); i++) {
+            String id = data.getId(i);
+            if (id == null) {
+                writeVarInt(out, 0);
+            } else {
+                byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, bytes.length + 1);
+                out.write(bytes);
+            }
+            out.writeByte(data.getValueType(i).ordinal());
+            out.writeByte(data.getMode(i).ordinal());
+            out.writeByte(data.getDirection(i).ordinal());
+            out.writeFloat((float) data.getValue(i));
+
+            int start = data.getPointStart(i);
+            int end = data.getPointEnd(i);
+            writeVarInt(out, end - start);
+            for (int p = start; p < end; p++) {
+                int lat = toFixed(data.getLat(p));
+                int lon = toFixed(data.getLon(p));
+                writeVarInt(out, zigzag(lat - prevLat));
+                writeVarInt(out, zigzag(lon - prevLon));
+                prevLat = lat;
+                prevLon = lon;
+            }
+        }
+        out.flush();
+    }
+
+    public static RoadData read(InputStream is) throws IOException {
+        return read(is, -1);
+    }
+
+    /**
+     * Reads untrusted data, e.g. the body of a request. Ids longer than MAX_ID_LENGTH bytes or
+     * longer than the rest of the stream are rejected before they are allocated.
+     *
+     * @param length the number of bytes of the stream, e.g. the Content-Length, or -1 if unknown
+     */
+    public static RoadData read(InputStream is, long length) throws IOException {
+        CountingInputStream counting = new CountingInputStream(new BufferedInputStream(is, 8192));
+        DataInputStream in = new DataInputStream(counting);
+        int magic = in.readUnsignedShort();
+        if (magic != MAGIC) {
+            throw new IllegalArgumentException("not a road data stream, magic " + magic);
+        }
+        int version = in.readUnsignedByte();
+        // version 1 has no direction
+        if (version != 1 && version != VERSION) {
+            throw new IllegalArgumentException("unsupported road data version " + version);
+        }
+
+        int entries = readVarInt(in);
+        int points = readVarInt(in);
+        // do not trust the counts for the initial capacity
+        RoadData data = new RoadData(Math.min(entries, 1 << 16), Math.min(points, 1 << 18));
+        int lat = 0, lon = 0;
+        for (int i = 0; i < entries; i++) {
+            int idLength = readVarInt(in);
+            String id = null;
+            if (idLength < 0 || idLength - 1 > MAX_ID_LENGTH) {
+                throw new IllegalArgumentException("id length " + (idLength - 1L) + " of entry " + i + " is not between 0 and " + MAX_ID_LENGTH);
+            }
+            if (length >= 0 && idLength - 1 > length - counting.count) {
+                throw new EOFException("id length " + (idLength - 1) + " of entry " + i + " exceeds the remaining " + (length - counting.count) + " bytes");
+            }
+            if (idLength > 0) {
+                byte[] bytes = new byte[idLength - 1];
+                in.readFully(bytes);
+                id = new String(bytes, StandardCharsets.UTF_8);
+            }
+            ValueType valueType = get(VALUE_TYPES, in.readUnsignedByte(), "value type");
+            Mode mode = get(MODES, in.readUnsignedByte(), "mode");
+            Direction direction = version == 1 ? Direction.BOTH : get(DIRECTIONS, in.readUnsignedByte(), "direction");
+            float value = in.readFloat();
+            if (!RoadData.isValidValue(value)) {
+                throw new IllegalArgumentException("value of entry " + i + " has to be a finite number not below 0 but was " + value);
+            }
+
+            int pointCount = readVarInt(in);
+            for (int p = 0; p < pointCount; p++) {
+                lat += unzigzag(readVarInt(in));
+                lon += unzigzag(readVarInt(in));
+                data.addPoint(lat / FACTOR, lon / FACTOR);
+            }
+            data.addEntry(id, value, valueType, mode, direction);
+        }
+        return data;
+    }
+
+    private static <T> T get(T[] values, int ordinal, String name) {
+        if (ordinal >= values.length) {
+            throw new IllegalArgumentException("unknown " + name + " " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    private static int toFixed(double degree) {
+        return (int) Math.round(degree * FACTOR);
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("varint is too long");
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
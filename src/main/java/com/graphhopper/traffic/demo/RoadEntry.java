@@ -12,6 +12,7 @@ public class RoadEntry {
     private double value;
     private String valueType;
     private String mode;
+    private String direction;
     private String id;
 
     public RoadEntry() {
@@ -61,7 +62,7 @@ public class RoadEntry {
     }
 
     /**
-     * Currently 'replace', 'multiply' and 'add' are supported
+     * Currently 'replace' and 'reset' are supported
      */
     public String getMode() {
         return mode;
@@ -71,8 +72,20 @@ public class RoadEntry {
         this.mode = mode;
     }
 
+    /**
+     * 'forward' or 'backward' relative to the order of the points, or 'both' which is also used
+     * if no direction is specified
+     */
+    public String getDirection() {
+        return direction;
+    }
+
+    public void setDirection(String direction) {
+        this.direction = direction;
+    }
+
     @Override
     public String toString() {
-        return "points:" + points + ", value:" + value + ", type:" + valueType + ", mode:" + mode;
+        return "points:" + points + ", value:" + value + ", type:" + valueType + ", mode:" + mode + ", direction:" + direction;
     }
 }
@@ -0,0 +1,251 @@
+package com.graphhopper.traffic.demo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A grid index over the geometries of the last applied feed, to return only the entries within
+ * a bounding box. Every feed updates it with its FeedDiff: only added and changed entries are
+ * placed into cells again. Entries which are not in the feed are removed, also if the diff does
+ * not report them, e.g. because the FeedState was cleared after an expiry.
+ *
+ * @author Peter Karich
+ */
+public class RoadIndex {
+
+    private final double cellSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Set<String>> cells = new HashMap<>();
+    private final Map<String, Slot> slots = new HashMap<>();
+    // increased by every update, slots not seen by the current update are removed
+    private int generation;
+
+    /**
+     * @param cellSize the width and height of a cell in degrees
+     */
+    public RoadIndex(double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cell size has to be positive " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Makes the specified data the content of this index. The diff has to be created from the
+     * same data.
+     */
+    public void update(RoadData data, FeedState.FeedDiff diff) {
+        boolean[] dirty = new boolean[data.size()];
+        for (int j = 0; j < diff.getAdded().size(); j++) {
+            dirty[diff.getAdded().get(j)] = true;
+        }
+        for (int j = 0; j < diff.getChanged().size(); j++) {
+            dirty[diff.getChanged().get(j)] = true;
+        }
+
+        lock.writeLock().lock();
+        try {
+            generation++;
+            for (int i = 0; i < data.size(); i++) {
+                String id = data.getId(i);
+                Slot slot = slots.get(id);
+                if (slot == null || dirty[i]) {
+                    remove(id);
+                    slot = insert(data, i);
+                } else {
+                    // unchanged geometry, only the position in the new data
+                    slot.data = data;
+                    slot.index = i;
+                }
+                slot.generation = generation;
+            }
+
+            List<String> removed = new ArrayList<>();
+            for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+                if (entry.getValue().generation != generation) {
+                    removed.add(entry.getKey());
+                }
+            }
+            for (String id : removed) {
+                remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the entries whose bounding box intersects the specified one, in the order of the
+     * feed
+     */
+    public RoadData query(double minLat, double minLon, double maxLat, double maxLon) {
+        List<Slot> found = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int minLatCell = cell(minLat), maxLatCell = cell(maxLat);
+            int minLonCell = cell(minLon), maxLonCell = cell(maxLon);
+            long cellCount = (long) (maxLatCell - minLatCell + 1) * (maxLonCell - minLonCell + 1);
+            Collection<Slot> candidates;
+            if (cellCount > cells.size()) {
+                // cheaper to test every entry than to visit mostly empty cells
+                candidates = slots.values();
+            } else {
+                Set<String> ids = new HashSet<>();
+                for (int latCell = minLatCell; latCell <= maxLatCell; latCell++) {
+                    for (int lonCell = minLonCell; lonCell <= maxLonCell; lonCell++) {
+                        Set<String> cellIds = cells.get(key(latCell, lonCell));
+                        if (cellIds != null) {
+                            ids.addAll(cellIds);
+                        }
+                    }
+                }
+                candidates = new ArrayList<>(ids.size());
+                for (String id : ids) {
+                    candidates.add(slots.get(id));
+                }
+            }
+
+            for (Slot slot : candidates) {
+                if (slot.intersects(minLat, minLon, maxLat, maxLon)) {
+                    found.add(slot);
+                }
+            }
+
+            Collections.sort(found, new Comparator<Slot>() {
+                @Override
+                public int compare(Slot o1, Slot o2) {
+                    return Integer.compare(o1.index, o2.index);
+                }
+            });
+            RoadData result = new RoadData(found.size(), found.size() * 4);
+            for (Slot slot : found) {
+                result.add(slot.data, slot.index);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the entries within the specified web mercator tile
+     */
+    public RoadData queryTile(int zoom, int x, int y) {
+        if (zoom < 0 || zoom > 24) {
+            throw new IllegalArgumentException("zoom has to be within [0, 24] but was " + zoom);
+        }
+        int tiles = 1 << zoom;
+        if (x < 0 || x >= tiles || y < 0 || y >= tiles) {
+            throw new IllegalArgumentException("tile " + x + "/" + y + " does not exist at zoom " + zoom);
+        }
+
+        return query(tileLat(y + 1, tiles), tileLon(x, tiles), tileLat(y, tiles), tileLon(x + 1, tiles));
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static double tileLon(int x, int tiles) {
+        return x * 360.0 / tiles - 180;
+    }
+
+    private static double tileLat(int y, int tiles) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2.0 * y / tiles))));
+    }
+
+    private Slot insert(RoadData data, int index) {
+        Slot slot = new Slot(data, index);
+        Set<Long> keys = new HashSet<>();
+        int end = data.getPointEnd(index);
+        int start = data.getPointStart(index);
+        for (int p = start; p < end; p++) {
+            double lat = data.getLat(p), lon = data.getLon(p);
+            slot.extend(lat, lon);
+            // all cells of the bounding box of the segment to the previous point
+            double prevLat = p == start ? lat : data.getLat(p - 1);
+            double prevLon = p == start ? lon : data.getLon(p - 1);
+            for (int latCell = cell(Math.min(lat, prevLat)); latCell <= cell(Math.max(lat, prevLat)); latCell++) {
+                for (int lonCell = cell(Math.min(lon, prevLon)); lonCell <= cell(Math.max(lon, prevLon)); lonCell++) {
+                    keys.add(key(latCell, lonCell));
+                }
+            }
+        }
+
+        slot.cells = new long[keys.size()];
+        int k = 0;
+        for (Long key : keys) {
+            slot.cells[k++] = key;
+            Set<String> cellIds = cells.get(key);
+            if (cellIds == null) {
+                cellIds = new HashSet<>();
+                cells.put(key, cellIds);
+            }
+            cellIds.add(data.getId(index));
+        }
+        slots.put(data.getId(index), slot);
+        return slot;
+    }
+
+    private void remove(String id) {
+        Slot slot = slots.remove(id);
+        if (slot == null) {
+            return;
+        }
+
+        for (long key : slot.cells) {
+            Set<String> cellIds = cells.get(key);
+            if (cellIds != null && cellIds.remove(id) && cellIds.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    private int cell(double degree) {
+        return (int) Math.floor(degree / cellSize);
+    }
+
+    private static long key(int latCell, int lonCell) {
+        return ((long) latCell << 32) | (lonCell & 0xFFFFFFFFL);
+    }
+
+    private static class Slot {
+
+        RoadData data;
+        int index;
+        int generation;
+        long[] cells;
+        double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+
+        Slot(RoadData data, int index) {
+            this.data = data;
+            this.index = index;
+        }
+
+        void extend(double lat, double lon) {
+            minLat = Math.min(minLat, lat);
+            minLon = Math.min(minLon, lon);
+            maxLat = Math.max(maxLat, lat);
+            maxLon = Math.max(maxLon, lon);
+        }
+
+        boolean intersects(double qMinLat, double qMinLon, double qMaxLat, double qMaxLon) {
+            return minLat <= qMaxLat && maxLat >= qMinLat && minLon <= qMaxLon && maxLon >= qMinLon;
+        }
+    }
+}
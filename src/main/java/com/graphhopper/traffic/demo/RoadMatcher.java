@@ -0,0 +1,162 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Matches the polyline of a feed entry to the sequence of edges it covers. The polyline is
+ * sampled every sampleDistance meters and every sample is snapped to its closest edge. Samples
+ * too far away from any road are ignored, and so are samples snapped to an edge which runs
+ * more than 60 degrees off the polyline, e.g. to a crossing street at a junction. The direction of
+ * every edge is derived from the polyline segment the sample was taken from, see
+ * EdgeMatch.isReverse.
+ * <p>
+ * The buffers for the candidates are reused per thread.
+ *
+ * @author Peter Karich
+ */
+public class RoadMatcher {
+
+    // the cosine of the maximum angle between an edge and the polyline segment of its sample
+    private static final double MIN_ALIGNMENT = 0.5;
+    private final DistanceCalc distCalc = Helper.DIST_PLANE;
+    private final Graph graph;
+    private final LocationIndex locationIndex;
+    private final ThreadLocal<MatchBuffer> buffers = ThreadLocal.withInitial(MatchBuffer::new);
+    private double sampleDistance = 20;
+    private double maxSnapDistance = 25;
+
+    public RoadMatcher(Graph graph, LocationIndex locationIndex) {
+        this.graph = graph;
+        this.locationIndex = locationIndex;
+    }
+
+    /**
+     * Distance in meter between two samples of a polyline
+     */
+    public RoadMatcher setSampleDistance(double sampleDistance) {
+        this.sampleDistance = sampleDistance;
+        return this;
+    }
+
+    /**
+     * Samples further away in meter from their closest edge are ignored
+     */
+    public RoadMatcher setMaxSnapDistance(double maxSnapDistance) {
+        this.maxSnapDistance = maxSnapDistance;
+        return this;
+    }
+
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Matches the points of the specified entry.
+     */
+    public EdgeMatch match(RoadData data, int index) {
+        MatchBuffer buffer = buffers.get();
+        buffer.clear();
+        int start = data.getPointStart(index);
+        int end = data.getPointEnd(index);
+        if (end - start == 1) {
+            snap(buffer, data.getLat(start), data.getLon(start), 0, 0);
+            return buffer.toMatch();
+        }
+
+        for (int i = start + 1; i < end; i++) {
+            double fromLat = data.getLat(i - 1);
+            double fromLon = data.getLon(i - 1);
+            double toLat = data.getLat(i);
+            double toLon = data.getLon(i);
+            double dLat = toLat - fromLat;
+            double dLon = toLon - fromLon;
+            double dist = distCalc.calcDist(fromLat, fromLon, toLat, toLon);
+            int samples = Math.max(1, (int) Math.ceil(dist / sampleDistance));
+            for (int s = 0; s < samples; s++) {
+                double factor = (double) s / samples;
+                snap(buffer, fromLat + dLat * factor, fromLon + dLon * factor, dLat, dLon);
+            }
+
+            if (i == end - 1) {
+                snap(buffer, toLat, toLon, dLat, dLon);
+            }
+        }
+        return buffer.toMatch();
+    }
+
+    private void snap(MatchBuffer buffer, double lat, double lon, double dLat, double dLon) {
+        QueryResult qr = locationIndex.findClosest(lat, lon, EdgeFilter.ALL_EDGES);
+        if (!qr.isValid() || qr.getQueryDistance() > maxSnapDistance) {
+            return;
+        }
+
+        EdgeIteratorState edge = qr.getClosestEdge();
+        int edgeId = edge.getEdge();
+        if (buffer.edgeIds.contains(edgeId)) {
+            return;
+        }
+
+        if (dLat == 0 && dLon == 0) {
+            // a single point has no direction, use the stored orientation
+            EdgeIteratorState stored = graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
+            buffer.add(edgeId, stored.getBaseNode() > stored.getAdjNode());
+            return;
+        }
+
+        // the segment of the edge geometry the sample was snapped to
+        PointList points = edge.fetchWayGeometry(3);
+        int segment = Math.max(0, Math.min(qr.getWayIndex(), points.size() - 2));
+        double lonScale = Math.cos(Math.toRadians(lat));
+        double edgeLat = points.getLatitude(segment + 1) - points.getLatitude(segment);
+        double edgeLon = (points.getLongitude(segment + 1) - points.getLongitude(segment)) * lonScale;
+        double dot = edgeLat * dLat + edgeLon * dLon * lonScale;
+        double norm = Math.sqrt((edgeLat * edgeLat + edgeLon * edgeLon) * (dLat * dLat + dLon * dLon * lonScale * lonScale));
+        // near a junction a sample can be closer to the crossing road than to the road of the entry
+        if (norm > 0 && Math.abs(dot) < MIN_ALIGNMENT * norm) {
+            return;
+        }
+
+        // relative to the node ids, not to the orientation of the closest edge
+        buffer.add(edgeId, dot < 0 != edge.getBaseNode() > edge.getAdjNode());
+    }
+
+    private static class MatchBuffer {
+
+        final TIntHashSet edgeIds = new TIntHashSet();
+        final TIntArrayList edges = new TIntArrayList();
+        final TIntArrayList reverse = new TIntArrayList();
+
+        void clear() {
+            edgeIds.clear();
+            edges.resetQuick();
+            reverse.resetQuick();
+        }
+
+        void add(int edgeId, boolean rev) {
+            edgeIds.add(edgeId);
+            edges.add(edgeId);
+            reverse.add(rev ? 1 : 0);
+        }
+
+        EdgeMatch toMatch() {
+            if (edges.isEmpty()) {
+                return EdgeMatch.EMPTY;
+            }
+
+            boolean[] rev = new boolean[reverse.size()];
+            for (int i = 0; i < rev.length; i++) {
+                rev[i] = reverse.get(i) == 1;
+            }
+            return new EdgeMatch(edges.toArray(), rev);
+        }
+    }
+}
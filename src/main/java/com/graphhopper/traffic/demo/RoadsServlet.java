@@ -3,12 +3,25 @@ package com.graphhopper.traffic.demo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.graphhopper.http.GraphHopperServlet;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
+ * Returns the current roads as JSON or, if the Accept header contains the content type of the
+ * RoadDataCodec, in the binary format.
+ * <p>
+ * The roads only change with a feed, so the responses are serialized once per feed and kept raw
+ * and gzipped. Clients can revalidate with If-None-Match and get a 304 if nothing changed.
+ * <p>
+ * With bbox=minLon,minLat,maxLon,maxLat or a web mercator tile z, x and y only the entries of
+ * that area are returned. These responses are created per request from the RoadIndex.
  *
  * @author Peter Karich
  */
@@ -20,8 +33,182 @@ public class RoadsServlet extends GraphHopperServlet {
     @Inject
     private DataUpdater updater;
 
+    private volatile Snapshot snapshot;
+
     @Override
     public void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
-        mapper.writeValue(res.getOutputStream(), updater.getAll());
+        if (req.getParameter("bbox") != null || req.getParameter("z") != null) {
+            RoadData area;
+            try {
+                area = queryArea(req);
+            } catch (IllegalArgumentException ex) {
+                res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                res.setContentType("application/json");
+                mapper.writeValue(res.getOutputStream(), Collections.singletonMap("message", ex.getMessage()));
+                return;
+            }
+
+            if (RoadDataCodec.isRequested(req.getHeader("Accept"))) {
+                res.setContentType(RoadDataCodec.CONTENT_TYPE);
+                RoadDataCodec.write(area, res.getOutputStream());
+            } else {
+                res.setContentType("application/json");
+                mapper.writeValue(res.getOutputStream(), area);
+            }
+            return;
+        }
+
+        Snapshot tmp = getSnapshot();
+        if (RoadDataCodec.isRequested(req.getHeader("Accept"))) {
+            write(req, res, tmp.binary, RoadDataCodec.CONTENT_TYPE);
+        } else {
+            write(req, res, tmp.json, "application/json");
+        }
+    }
+
+    private RoadData queryArea(HttpServletRequest req) {
+        RoadIndex index = updater.getRoadIndex();
+        String bbox = req.getParameter("bbox");
+        if (bbox != null) {
+            String[] values = bbox.split(",");
+            if (values.length != 4) {
+                throw new IllegalArgumentException("bbox has to be minLon,minLat,maxLon,maxLat but was " + bbox);
+            }
+            double minLon = parseDouble(values[0]), minLat = parseDouble(values[1]);
+            double maxLon = parseDouble(values[2]), maxLat = parseDouble(values[3]);
+            if (minLat > maxLat || minLon > maxLon) {
+                throw new IllegalArgumentException("bbox minimum is greater than maximum " + bbox);
+            }
+            return index.query(minLat, minLon, maxLat, maxLon);
+        }
+
+        return index.queryTile(parseInt(req.getParameter("z")), parseInt(req.getParameter("x")), parseInt(req.getParameter("y")));
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("not a number " + value);
+        }
+    }
+
+    private static int parseInt(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("a tile requires z, x and y");
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("not an integer " + value);
+        }
+    }
+
+    private void write(HttpServletRequest req, HttpServletResponse res, Representation rep, String contentType) throws IOException {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        String etag = gzip ? rep.gzipEtag : rep.etag;
+        res.setHeader("ETag", etag);
+        res.setHeader("Vary", "Accept, Accept-Encoding");
+        res.setHeader("Cache-Control", "no-cache");
+        if (matches(req.getHeader("If-None-Match"), etag)) {
+            res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] bytes = gzip ? rep.gzip : rep.raw;
+        res.setContentType(contentType);
+        if (gzip) {
+            res.setHeader("Content-Encoding", "gzip");
+        }
+        res.setContentLength(bytes.length);
+        res.getOutputStream().write(bytes);
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the serialized roads of the current feed, only the first request after a feed
+     * serializes them.
+     */
+    private Snapshot getSnapshot() throws IOException {
+        RoadData roads = updater.getAll();
+        Snapshot tmp = snapshot;
+        if (tmp != null && tmp.roads == roads) {
+            return tmp;
+        }
+
+        synchronized (this) {
+            tmp = snapshot;
+            if (tmp == null || tmp.roads != roads) {
+                ByteArrayOutputStream binary = new ByteArrayOutputStream();
+                RoadDataCodec.write(roads, binary);
+                tmp = new Snapshot(roads, new Representation("j", mapper.writeValueAsBytes(roads)), new Representation("b", binary.toByteArray()));
+                snapshot = tmp;
+            }
+            return tmp;
+        }
+    }
+
+    private static class Snapshot {
+
+        final RoadData roads;
+        final Representation json;
+        final Representation binary;
+
+        Snapshot(RoadData roads, Representation json, Representation binary) {
+            this.roads = roads;
+            this.json = json;
+            this.binary = binary;
+        }
+    }
+
+    static class Representation {
+
+        final byte[] raw;
+        final byte[] gzip;
+        final String etag;
+        final String gzipEtag;
+
+        Representation(String prefix, byte[] raw) throws IOException {
+            this.raw = raw;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+                gzipOut.write(raw);
+            }
+            this.gzip = out.toByteArray();
+            // derived from the content, so it stays valid across restarts
+            String hash = prefix + hash(raw);
+            this.etag = "\"" + hash + "\"";
+            this.gzipEtag = "\"" + hash + "-gzip\"";
+        }
+
+        private static String hash(byte[] bytes) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+                StringBuilder sb = new StringBuilder(24);
+                for (int i = 0; i < 12; i++) {
+                    sb.append(String.format("%02x", digest[i]));
+                }
+                return sb.toString();
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
     }
 }
@@ -0,0 +1,236 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.routing.Path;
+import com.graphhopper.util.EdgeIteratorState;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU cache of route responses. Every entry stores the sorted ids of the edges its paths
+ * use, so a feed only evicts the routes that contain one of the edges it changed, see
+ * invalidate. Edge changes outside of a route, e.g. a cleared jam on an alternative, do not evict
+ * it, so entries also expire after maxAgeMillis.
+ * <p>
+ * A response is only cached if no invalidation happened while it was calculated, see getStamp.
+ *
+ * @author Peter Karich
+ */
+public class RouteCache {
+
+    private final int maxSize;
+    private final long maxAgeMillis;
+    private final Map<String, Entry> entries;
+    private final AtomicLong stamp = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+
+    public RouteCache(final int maxSize, long maxAgeMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("route cache size has to be at least 1 but was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.maxAgeMillis = maxAgeMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > RouteCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the key of the specified request or null if its route depends on the time of the
+     * request and must not be cached
+     */
+    public static String createKey(GHRequest request) {
+        if (!request.getHints().get(TrafficGraphHopper.DEPARTURE_TIME, "").isEmpty()) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < request.getPoints().size(); i++) {
+            sb.append(request.getPoints().get(i).lat).append(',').append(request.getPoints().get(i).lon);
+            if (request.hasFavoredHeading(i)) {
+                sb.append(',').append(request.getFavoredHeading(i));
+            }
+            sb.append(';');
+        }
+        sb.append(request.getAlgorithm()).append(';').append(request.getLocale()).append(';');
+        // sorted, so that the order of the parameters does not matter
+        sb.append(new TreeMap<>(request.getHints().toMap()));
+        return sb.toString();
+    }
+
+    /**
+     * @return the cached response or null if there is none or it is too old
+     */
+    public synchronized GHResponse get(String key, long now) {
+        Entry entry = entries.get(key);
+        if (entry == null || now - entry.created > maxAgeMillis) {
+            if (entry != null) {
+                entries.remove(key);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.response;
+    }
+
+    /**
+     * The stamp is increased by every invalidation. It has to be fetched before the route is
+     * calculated and passed to put.
+     */
+    public long getStamp() {
+        return stamp.get();
+    }
+
+    /**
+     * Caches the specified response unless an invalidation happened since the specified stamp
+     * was fetched, then the route could be based on speeds which are already outdated.
+     *
+     * @param edgeIds the sorted ids of the edges of all paths of the response
+     */
+    public synchronized boolean put(String key, GHResponse response, int[] edgeIds, long stamp, long now) {
+        if (stamp != this.stamp.get()) {
+            return false;
+        }
+
+        entries.put(key, new Entry(response, edgeIds, now));
+        return true;
+    }
+
+    /**
+     * Evicts all routes with one of the edges of the specified edge keys.
+     *
+     * @return the number of evicted routes
+     */
+    public int invalidate(EdgeUpdates updates) {
+        TIntHashSet edgeIds = new TIntHashSet(updates.size());
+        for (int i = 0; i < updates.size(); i++) {
+            edgeIds.add(SpeedOverlay.getEdgeId(updates.getEdgeKey(i)));
+        }
+        return invalidate(edgeIds);
+    }
+
+    /**
+     * Evicts all routes with an edge which has a different speed in the specified snapshots.
+     *
+     * @return the number of evicted routes
+     */
+    public int invalidate(SpeedOverlay previous, SpeedOverlay next) {
+        TIntHashSet edgeIds = new TIntHashSet();
+        int size = Math.max(previous.size(), next.size());
+        for (int edgeKey = 0; edgeKey < size; edgeKey++) {
+            if (Float.compare((float) previous.getSpeed(edgeKey), (float) next.getSpeed(edgeKey)) != 0) {
+                edgeIds.add(SpeedOverlay.getEdgeId(edgeKey));
+            }
+        }
+        return invalidate(edgeIds);
+    }
+
+    synchronized int invalidate(TIntHashSet edgeIds) {
+        if (edgeIds.isEmpty()) {
+            return 0;
+        }
+
+        stamp.incrementAndGet();
+        int[] sorted = edgeIds.toArray();
+        Arrays.sort(sorted);
+        int count = 0;
+        Iterator<Entry> iter = entries.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().intersects(edgeIds, sorted)) {
+                iter.remove();
+                count++;
+            }
+        }
+        invalidated.addAndGet(count);
+        return count;
+    }
+
+    public synchronized void clear() {
+        stamp.incrementAndGet();
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getInvalidated() {
+        return invalidated.get();
+    }
+
+    /**
+     * @return the sorted and distinct ids of the edges of the specified paths, virtual edges are
+     * mapped to the edge they were split from
+     */
+    public static int[] getEdgeIds(List<Path> paths) {
+        TIntArrayList edgeIds = new TIntArrayList();
+        for (Path path : paths) {
+            for (EdgeIteratorState edge : path.calcEdges()) {
+                edgeIds.add(SpeedOverlay.getEdgeId(TrafficWeighting.getOriginalEdgeKey(edge, false)));
+            }
+        }
+        edgeIds.sort();
+        TIntArrayList distinct = new TIntArrayList(edgeIds.size());
+        for (int i = 0; i < edgeIds.size(); i++) {
+            if (i == 0 || edgeIds.get(i) != edgeIds.get(i - 1)) {
+                distinct.add(edgeIds.get(i));
+            }
+        }
+        return distinct.toArray();
+    }
+
+    private static class Entry {
+
+        final GHResponse response;
+        final int[] edgeIds;
+        final long created;
+
+        Entry(GHResponse response, int[] edgeIds, long created) {
+            this.response = response;
+            this.edgeIds = edgeIds;
+            this.created = created;
+        }
+
+        boolean intersects(TIntHashSet changed, int[] sortedChanged) {
+            // look up the elements of the smaller side in the bigger one
+            if (sortedChanged.length < edgeIds.length) {
+                for (int edgeId : sortedChanged) {
+                    if (Arrays.binarySearch(edgeIds, edgeId) >= 0) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            for (int edgeId : edgeIds) {
+                if (changed.contains(edgeId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
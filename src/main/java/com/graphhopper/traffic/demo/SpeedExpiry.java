@@ -0,0 +1,122 @@
+package com.graphhopper.traffic.demo;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntLongHashMap;
+
+/**
+ * A timer wheel for the traffic speeds of the edge keys, i.e. of one direction of an edge. Every
+ * time an edge key is confirmed by a feed its deadline is moved to now + ttl. Edge keys whose
+ * deadline passed are returned by expire, so that their speed can be reverted in one batch. Only
+ * the buckets between the previous and the current call of expire are visited, never all edges.
+ *
+ * @author Peter Karich
+ */
+public class SpeedExpiry {
+
+    private static final long NO_DEADLINE = -1;
+    private final long ttlMillis;
+    private final long tickMillis;
+    private final TIntArrayList[] buckets;
+    private final TIntLongHashMap deadlines = new TIntLongHashMap(1000, 0.5f, -1, NO_DEADLINE);
+    private long lastTick = Long.MIN_VALUE;
+
+    public SpeedExpiry(long ttlMillis, int slots) {
+        if (slots < 2) {
+            throw new IllegalArgumentException("at least two slots are required " + slots);
+        }
+
+        this.ttlMillis = ttlMillis;
+        // the wheel has to cover the whole ttl, otherwise a bucket would hold several rotations
+        this.tickMillis = Math.max(1, ttlMillis / (slots - 1));
+        this.buckets = new TIntArrayList[slots];
+        for (int i = 0; i < slots; i++) {
+            buckets[i] = new TIntArrayList();
+        }
+    }
+
+    /**
+     * Moves the deadline of the specified edge key to now + ttl.
+     */
+    public void touch(int edgeKey, long now) {
+        init(now);
+        long deadline = now + ttlMillis;
+        long oldDeadline = deadlines.put(edgeKey, deadline);
+        // the edge key is already in the bucket of the new deadline
+        if (oldDeadline != NO_DEADLINE && tick(oldDeadline) == tick(deadline)) {
+            return;
+        }
+
+        buckets[slot(deadline)].add(edgeKey);
+    }
+
+    /**
+     * Stops tracking the specified edge key, e.g. because its speed was reverted by a feed.
+     */
+    public void remove(int edgeKey) {
+        deadlines.remove(edgeKey);
+    }
+
+    /**
+     * Adds all edge keys whose deadline passed to the specified list and stops tracking them.
+     */
+    public void expire(long now, TIntArrayList expired) {
+        init(now);
+        long nowTick = tick(now);
+        // more than one rotation passed, all buckets have to be visited once
+        long fromTick = Math.max(lastTick + 1, nowTick - buckets.length + 1);
+        for (long t = fromTick; t <= nowTick; t++) {
+            int slot = (int) (t % buckets.length);
+            TIntArrayList bucket = buckets[slot];
+            TIntArrayList keep = null;
+            for (int i = 0; i < bucket.size(); i++) {
+                int edgeKey = bucket.get(i);
+                long deadline = deadlines.get(edgeKey);
+                if (deadline == NO_DEADLINE || slot(deadline) != slot) {
+                    // removed or moved to another bucket
+                    continue;
+                }
+
+                if (deadline <= now) {
+                    deadlines.remove(edgeKey);
+                    expired.add(edgeKey);
+                } else {
+                    if (keep == null) {
+                        keep = new TIntArrayList();
+                    }
+                    keep.add(edgeKey);
+                }
+            }
+            bucket.resetQuick();
+            if (keep != null) {
+                bucket.addAll(keep);
+            }
+        }
+        // the current bucket can still receive edge keys expiring later in this tick
+        lastTick = nowTick - 1;
+    }
+
+    public int size() {
+        return deadlines.size();
+    }
+
+    public void clear() {
+        deadlines.clear();
+        for (TIntArrayList bucket : buckets) {
+            bucket.resetQuick();
+        }
+    }
+
+    private void init(long now) {
+        if (lastTick == Long.MIN_VALUE) {
+            lastTick = tick(now) - 1;
+        }
+    }
+
+    private long tick(long time) {
+        return time / tickMillis;
+    }
+
+    private int slot(long time) {
+        return (int) (tick(time) % buckets.length);
+    }
+}
@@ -0,0 +1,88 @@
+package com.graphhopper.traffic.demo;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of the traffic speeds per edge and direction. The speeds are indexed by
+ * edge key, see createEdgeKey. An edge direction without a traffic speed has NaN and the speed of
+ * the edge flags is used. Updates never modify a snapshot, instead they create a copy with the
+ * next version.
+ *
+ * @author Peter Karich
+ */
+public class SpeedOverlay {
+
+    public static final SpeedOverlay EMPTY = new SpeedOverlay(0, new float[0]);
+
+    private final long version;
+    private final float[] speeds;
+
+    SpeedOverlay(long version, float[] speeds) {
+        this.version = version;
+        this.speeds = speeds;
+    }
+
+    /**
+     * @param reverse true for traveling from the higher to the lower node id of the edge, like
+     * GHUtility.createEdgeKey
+     */
+    public static int createEdgeKey(int edgeId, boolean reverse) {
+        return (edgeId << 1) | (reverse ? 1 : 0);
+    }
+
+    public static int getEdgeId(int edgeKey) {
+        return edgeKey >> 1;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the traffic speed in km/h or NaN if there is none for the specified edge key
+     */
+    public double getSpeed(int edgeKey) {
+        if (edgeKey < 0 || edgeKey >= speeds.length) {
+            return Double.NaN;
+        }
+
+        return speeds[edgeKey];
+    }
+
+    /**
+     * @return the number of edge keys this snapshot can hold a speed for, all higher edge keys
+     * have none
+     */
+    public int size() {
+        return speeds.length;
+    }
+
+    public boolean hasSpeed(int edgeKey) {
+        return !Double.isNaN(getSpeed(edgeKey));
+    }
+
+    /**
+     * Creates the next version of this snapshot with the specified speeds applied.
+     */
+    public SpeedOverlay apply(EdgeUpdates updates) {
+        int length = speeds.length;
+        for (int i = 0; i < updates.size(); i++) {
+            length = Math.max(length, updates.getEdgeKey(i) + 1);
+        }
+
+        float[] newSpeeds = Arrays.copyOf(speeds, length);
+        if (length > speeds.length) {
+            Arrays.fill(newSpeeds, speeds.length, length, Float.NaN);
+        }
+
+        for (int i = 0; i < updates.size(); i++) {
+            newSpeeds[updates.getEdgeKey(i)] = (float) updates.getSpeed(i);
+        }
+        return new SpeedOverlay(version + 1, newSpeeds);
+    }
+
+    @Override
+    public String toString() {
+        return "version:" + version + ", edge keys:" + speeds.length;
+    }
+}
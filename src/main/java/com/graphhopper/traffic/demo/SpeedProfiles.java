@@ -0,0 +1,160 @@
+package com.graphhopper.traffic.demo;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * Typical speeds per time of day, learned from the feeds. Only edge directions that ever had a
+ * traffic speed get a profile: 96 quarter-hour buckets of one byte each, the speed in km/h, 0 if
+ * unknown and 255 if closed. Every observation moves the bucket towards the observed speed. A closure
+ * (speed 0) marks the bucket as closed until a speed is observed again, as it cannot be averaged.
+ * The number of profiles is limited to maxProfiles, further edge directions are ignored.
+ * <p>
+ * Only one thread may record. The edge key to profile mapping is replaced as a whole when new
+ * profiles are added, so readers never see it being modified. A reader can see a bucket before
+ * or after a concurrent update, which does not matter for a typical speed.
+ *
+ * @author Peter Karich
+ */
+public class SpeedProfiles {
+
+    public static final int BUCKETS = 96;
+    private static final int BUCKET_MINUTES = 24 * 60 / BUCKETS;
+    private static final double WEIGHT = 0.2;
+    private static final int CLOSED = 255;
+    private static final int MAX_SPEED = CLOSED - 1;
+    private final int maxProfiles;
+    private final ZoneId zone;
+    private volatile Index index = new Index(new TIntIntHashMap(16, 0.5f, -1, -1), new byte[0]);
+    private int rejected;
+
+    public SpeedProfiles(int maxProfiles, ZoneId zone) {
+        this.maxProfiles = maxProfiles;
+        this.zone = zone;
+    }
+
+    /**
+     * @return the bucket of the time of day of the specified time
+     */
+    public int getBucket(long epochMillis) {
+        ZonedDateTime time = Instant.ofEpochMilli(epochMillis).atZone(zone);
+        return (time.getHour() * 60 + time.getMinute()) / BUCKET_MINUTES;
+    }
+
+    /**
+     * @return the typical speed in km/h, 0 if the edge direction is typically closed or NaN if
+     * the specified edge key has no profile or its bucket is unknown
+     */
+    public double getSpeed(int edgeKey, int bucket) {
+        Index tmp = index;
+        int profile = tmp.profiles.get(edgeKey);
+        if (profile < 0) {
+            return Double.NaN;
+        }
+
+        int speed = tmp.buckets[profile * BUCKETS + bucket] & 0xFF;
+        if (speed == CLOSED) {
+            return 0;
+        }
+        return speed == 0 ? Double.NaN : speed;
+    }
+
+    public boolean hasProfile(int edgeKey) {
+        return index.profiles.containsKey(edgeKey);
+    }
+
+    /**
+     * @return the edge keys which have a profile
+     */
+    public int[] getEdgeKeys() {
+        return index.profiles.keys();
+    }
+
+    /**
+     * Records the observed speeds for the specified bucket, the edge keys without a profile get
+     * one if the limit is not reached.
+     */
+    public void record(EdgeUpdates observed, int bucket) {
+        if (bucket < 0 || bucket >= BUCKETS) {
+            throw new IllegalArgumentException("bucket has to be within [0, " + BUCKETS + ") but was " + bucket);
+        }
+
+        Index tmp = index;
+        TIntIntHashMap profiles = null;
+        for (int i = 0; i < observed.size(); i++) {
+            int edgeKey = observed.getEdgeKey(i);
+            if (tmp.profiles.containsKey(edgeKey) || profiles != null && profiles.containsKey(edgeKey)) {
+                continue;
+            }
+            int count = profiles == null ? tmp.profiles.size() : profiles.size();
+            if (count >= maxProfiles) {
+                rejected++;
+                continue;
+            }
+
+            if (profiles == null) {
+                profiles = new TIntIntHashMap(tmp.profiles.size() * 2 + 16, 0.5f, -1, -1);
+                profiles.putAll(tmp.profiles);
+            }
+            profiles.put(edgeKey, profiles.size());
+        }
+
+        if (profiles != null) {
+            byte[] buckets = Arrays.copyOf(tmp.buckets, profiles.size() * BUCKETS);
+            tmp = new Index(profiles, buckets);
+            index = tmp;
+        }
+
+        for (int i = 0; i < observed.size(); i++) {
+            int profile = tmp.profiles.get(observed.getEdgeKey(i));
+            if (profile < 0) {
+                continue;
+            }
+
+            double speed = observed.getSpeed(i);
+            if (Double.isNaN(speed)) {
+                continue;
+            }
+            int pos = profile * BUCKETS + bucket;
+            if (speed <= 0) {
+                tmp.buckets[pos] = (byte) CLOSED;
+                continue;
+            }
+            int old = tmp.buckets[pos] & 0xFF;
+            double value = old == 0 || old == CLOSED ? speed : old + WEIGHT * (speed - old);
+            tmp.buckets[pos] = (byte) Math.max(1, Math.min(MAX_SPEED, Math.round(value)));
+        }
+    }
+
+    public int size() {
+        return index.profiles.size();
+    }
+
+    /**
+     * Removes all profiles, e.g. because the edge keys of a new graph are different.
+     */
+    public void clear() {
+        index = new Index(new TIntIntHashMap(16, 0.5f, -1, -1), new byte[0]);
+    }
+
+    /**
+     * @return the number of observations ignored because maxProfiles was reached
+     */
+    public int getRejected() {
+        return rejected;
+    }
+
+    private static class Index {
+
+        final TIntIntHashMap profiles;
+        final byte[] buckets;
+
+        Index(TIntIntHashMap profiles, byte[] buckets) {
+            this.profiles = profiles;
+            this.buckets = buckets;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.reader.osm.GraphHopperOSM;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.routing.RoutingAlgorithmFactorySimple;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Routes with the traffic speeds of the current SpeedOverlay for the fastest weighting. Every
+ * request fetches the current snapshot once, so concurrent feeds never block routing.
+ * <p>
+ * With the departure_time hint, as ISO-8601 date time or epoch milliseconds, a departure more
+ * than DEPARTURE_TOLERANCE from now uses the SpeedProfiles of its quarter hour instead.
+ * <p>
+ * With a CHRebuilder compatible requests are answered by its latest contraction hierarchies.
+ * With a LandmarkUpdater the flexible requests use its landmarks, which stay valid under traffic.
+ * The other requests of its weighting are routed without landmarks.
+ * With a RouteCache repeated requests are answered without routing until a feed changes an edge
+ * of their route.
+ *
+ * @author Peter Karich
+ */
+public class TrafficGraphHopper extends GraphHopperOSM {
+
+    public static final String DEPARTURE_TIME = "departure_time";
+    static final long DEPARTURE_TOLERANCE = 15 * 60 * 1000;
+    private final TrafficOverlay overlay;
+    private final SpeedProfiles profiles;
+    private CHRebuilder chRebuilder;
+    private LandmarkUpdater landmarks;
+    private RouteCache routeCache;
+
+    public TrafficGraphHopper(TrafficOverlay overlay) {
+        this(overlay, null);
+    }
+
+    /**
+     * @param profiles can be null, then the departure time is ignored
+     */
+    public TrafficGraphHopper(TrafficOverlay overlay, SpeedProfiles profiles) {
+        this.overlay = overlay;
+        this.profiles = profiles;
+    }
+
+    public TrafficGraphHopper setCHRebuilder(CHRebuilder chRebuilder) {
+        this.chRebuilder = chRebuilder;
+        return this;
+    }
+
+    public TrafficGraphHopper setLandmarks(LandmarkUpdater landmarks) {
+        this.landmarks = landmarks;
+        return this;
+    }
+
+    @Override
+    public RoutingAlgorithmFactory getAlgorithmFactory(HintsMap map) {
+        if (landmarks != null && landmarks.isCompatible(map)) {
+            return landmarks.getAlgorithmFactory();
+        }
+        // e.g. a departure time, the landmarks of GraphHopper would be used otherwise
+        if (landmarks != null && landmarks.isCovered(map)) {
+            return new RoutingAlgorithmFactorySimple();
+        }
+        return super.getAlgorithmFactory(map);
+    }
+
+    public TrafficGraphHopper setRouteCache(RouteCache routeCache) {
+        this.routeCache = routeCache;
+        return this;
+    }
+
+    @Override
+    public GHResponse route(GHRequest request) {
+        // before the CHRebuilder changes the request
+        String key = routeCache == null ? null : RouteCache.createKey(request);
+        long stamp = 0;
+        if (key != null) {
+            GHResponse cached = routeCache.get(key, System.currentTimeMillis());
+            if (cached != null) {
+                return cached;
+            }
+            stamp = routeCache.getStamp();
+        }
+
+        GraphHopper routing = chRebuilder == null ? null : chRebuilder.select(request);
+        if (routing == null) {
+            routing = this;
+        }
+
+        GHResponse response = new GHResponse();
+        List<Path> paths = routing.calcPaths(request, response);
+        if (key != null && !response.hasErrors()) {
+            routeCache.put(key, response, RouteCache.getEdgeIds(paths), stamp, System.currentTimeMillis());
+        }
+        return response;
+    }
+
+    @Override
+    public Weighting createWeighting(HintsMap hintsMap, FlagEncoder encoder, Graph graph) {
+        String weighting = hintsMap.getWeighting();
+        if ("fastest".equalsIgnoreCase(weighting) || weighting.isEmpty()) {
+            String departure = hintsMap.get(DEPARTURE_TIME, "");
+            if (profiles != null && !departure.isEmpty()) {
+                long departureMillis = parseDepartureTime(departure);
+                if (Math.abs(departureMillis - System.currentTimeMillis()) > DEPARTURE_TOLERANCE) {
+                    return new ProfileWeighting(encoder, hintsMap, profiles, profiles.getBucket(departureMillis));
+                }
+            }
+            return new TrafficWeighting(encoder, hintsMap, overlay.get());
+        }
+
+        return super.createWeighting(hintsMap, encoder, graph);
+    }
+
+    static long parseDepartureTime(String str) {
+        try {
+            return Long.parseLong(str);
+        } catch (NumberFormatException ex) {
+        }
+
+        try {
+            return OffsetDateTime.parse(str).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException(DEPARTURE_TIME + " has to be an ISO-8601 date time with offset or epoch milliseconds but was " + str);
+        }
+    }
+
+    public TrafficOverlay getOverlay() {
+        return overlay;
+    }
+
+    public SpeedProfiles getProfiles() {
+        return profiles;
+    }
+}
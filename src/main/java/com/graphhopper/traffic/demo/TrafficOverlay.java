@@ -0,0 +1,24 @@
+package com.graphhopper.traffic.demo;
+
+/**
+ * Holds the currently published SpeedOverlay. Readers fetch the snapshot once and keep it for
+ * the whole request, a new snapshot is visible to all following requests at once.
+ *
+ * @author Peter Karich
+ */
+public class TrafficOverlay {
+
+    private volatile SpeedOverlay current = SpeedOverlay.EMPTY;
+
+    public SpeedOverlay get() {
+        return current;
+    }
+
+    public void publish(SpeedOverlay overlay) {
+        if (overlay.getVersion() <= current.getVersion()) {
+            throw new IllegalArgumentException("Cannot publish version " + overlay.getVersion() + ", current is " + current.getVersion());
+        }
+
+        current = overlay;
+    }
+}
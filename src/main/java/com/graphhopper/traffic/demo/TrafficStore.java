@@ -0,0 +1,219 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.Graph;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Saves the SpeedOverlay and the MatchCache in memory mapped files next to the graph, so that
+ * after a restart routing uses the traffic speeds before the first feed arrived.
+ * <p>
+ * Both files store the node and edge count of the graph in their header and are ignored if the
+ * graph changed. The cleared valid flag is flushed before the data is written, so a file from an
+ * interrupted save is ignored as well. After a feed only the changed speeds are written, the whole
+ * overlay only if the file does not hold the previous version.
+ *
+ * @author Peter Karich
+ */
+public class TrafficStore {
+
+    // also the format version: 2 stores the speeds per edge key
+    private static final int VALID = 2;
+    private static final int REVERSE_BIT = 0x80000000;
+    private final Directory dir;
+    private final DataAccess speeds;
+    private final DataAccess matches;
+
+    public TrafficStore(String location) {
+        dir = new GHDirectory(location, DAType.MMAP);
+        speeds = open("traffic_speeds");
+        matches = open("traffic_matches");
+    }
+
+    private DataAccess open(String name) {
+        DataAccess da = dir.find(name);
+        if (!da.loadExisting()) {
+            da.create(1024);
+        }
+        return da;
+    }
+
+    /**
+     * Header: valid flag, node count, edge count, number of speeds, version (two ints). Data: one
+     * float per edge key, NaN for no traffic speed.
+     */
+    public void saveOverlay(SpeedOverlay overlay, Graph graph) {
+        invalidate(speeds);
+        speeds.ensureCapacity(Math.max(4, 4L * overlay.size()));
+        for (int edgeKey = 0; edgeKey < overlay.size(); edgeKey++) {
+            setSpeed(edgeKey, overlay.getSpeed(edgeKey));
+        }
+        commitOverlay(overlay, graph);
+    }
+
+    /**
+     * Saves the next overlay by writing only the speeds of the specified updates and of the edge
+     * keys it added. Falls back to saveOverlay if the file does not hold the previous overlay.
+     */
+    public void saveOverlay(SpeedOverlay previous, SpeedOverlay next, EdgeUpdates updates, Graph graph) {
+        if (!isValid(speeds, graph) || getVersion() != previous.getVersion() || speeds.getHeader(12) != previous.size()) {
+            saveOverlay(next, graph);
+            return;
+        }
+
+        invalidate(speeds);
+        speeds.ensureCapacity(Math.max(4, 4L * next.size()));
+        for (int edgeKey = previous.size(); edgeKey < next.size(); edgeKey++) {
+            setSpeed(edgeKey, next.getSpeed(edgeKey));
+        }
+        for (int i = 0; i < updates.size(); i++) {
+            int edgeKey = updates.getEdgeKey(i);
+            setSpeed(edgeKey, next.getSpeed(edgeKey));
+        }
+        commitOverlay(next, graph);
+    }
+
+    private void setSpeed(int edgeKey, double speed) {
+        speeds.setInt(4L * edgeKey, Float.floatToRawIntBits((float) speed));
+    }
+
+    private void commitOverlay(SpeedOverlay overlay, Graph graph) {
+        speeds.setHeader(4, graph.getNodes());
+        speeds.setHeader(8, graph.getAllEdges().length());
+        speeds.setHeader(12, overlay.size());
+        speeds.setHeader(16, (int) (overlay.getVersion() >>> 32));
+        speeds.setHeader(20, (int) overlay.getVersion());
+        speeds.setHeader(0, VALID);
+        speeds.flush();
+    }
+
+    private long getVersion() {
+        return ((long) speeds.getHeader(16) << 32) | (speeds.getHeader(20) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the saved overlay or null if there is none for the specified graph
+     */
+    public SpeedOverlay loadOverlay(Graph graph) {
+        if (!isValid(speeds, graph)) {
+            return null;
+        }
+
+        float[] values = new float[speeds.getHeader(12)];
+        for (int edgeKey = 0; edgeKey < values.length; edgeKey++) {
+            values[edgeKey] = Float.intBitsToFloat(speeds.getInt(4L * edgeKey));
+        }
+        return new SpeedOverlay(getVersion(), values);
+    }
+
+    /**
+     * Header: valid flag, node count, edge count, number of entries. Data per entry: the byte
+     * length of the id (-1 for null), the UTF-8 bytes of the id packed into ints, the geometry hash, the number
+     * of edges and the edges with the reverse flag in the highest bit.
+     */
+    public void saveMatches(MatchCache cache, Graph graph) {
+        invalidate(matches);
+        final long[] pointer = {0};
+        final int[] count = {0};
+        cache.forEach(new MatchCache.Visitor() {
+            @Override
+            public void visit(String id, int geometryHash, EdgeMatch match) {
+                byte[] bytes = id == null ? new byte[0] : id.getBytes(StandardCharsets.UTF_8);
+                int idInts = (bytes.length + 3) / 4;
+                long pos = pointer[0];
+                matches.ensureCapacity(pos + 4L * (3 + idInts + match.size()));
+                matches.setInt(pos, id == null ? -1 : bytes.length);
+                pos += 4;
+                for (int i = 0; i < idInts; i++) {
+                    int packed = 0;
+                    for (int b = 0; b < 4 && 4 * i + b < bytes.length; b++) {
+                        packed |= (bytes[4 * i + b] & 0xFF) << (8 * b);
+                    }
+                    matches.setInt(pos, packed);
+                    pos += 4;
+                }
+                matches.setInt(pos, geometryHash);
+                pos += 4;
+                matches.setInt(pos, match.size());
+                pos += 4;
+                for (int m = 0; m < match.size(); m++) {
+                    matches.setInt(pos, match.getEdgeId(m) | (match.isReverse(m) ? REVERSE_BIT : 0));
+                    pos += 4;
+                }
+                pointer[0] = pos;
+                count[0]++;
+            }
+        });
+        matches.setHeader(4, graph.getNodes());
+        matches.setHeader(8, graph.getAllEdges().length());
+        matches.setHeader(12, count[0]);
+        matches.setHeader(0, VALID);
+        matches.flush();
+    }
+
+    /**
+     * Puts the saved matches into the specified cache, which has to be checked against the
+     * specified graph before.
+     *
+     * @return the number of loaded matches, 0 if there are none for the specified graph
+     */
+    public int loadMatches(MatchCache cache, Graph graph) {
+        if (!isValid(matches, graph)) {
+            return 0;
+        }
+
+        int count = matches.getHeader(12);
+        long pos = 0;
+        for (int e = 0; e < count; e++) {
+            int length = matches.getInt(pos);
+            pos += 4;
+            boolean nullId = length < 0;
+            length = Math.max(0, length);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i += 4) {
+                int packed = matches.getInt(pos);
+                pos += 4;
+                for (int b = 0; b < 4 && i + b < length; b++) {
+                    bytes[i + b] = (byte) (packed >>> (8 * b));
+                }
+            }
+            int geometryHash = matches.getInt(pos);
+            pos += 4;
+            int size = matches.getInt(pos);
+            pos += 4;
+            int[] edgeIds = new int[size];
+            boolean[] reverse = new boolean[size];
+            for (int m = 0; m < size; m++) {
+                int value = matches.getInt(pos);
+                pos += 4;
+                edgeIds[m] = value & ~REVERSE_BIT;
+                reverse[m] = (value & REVERSE_BIT) != 0;
+            }
+            cache.put(nullId ? null : new String(bytes, StandardCharsets.UTF_8), geometryHash, size == 0 ? EdgeMatch.EMPTY : new EdgeMatch(edgeIds, reverse));
+        }
+        return count;
+    }
+
+    /**
+     * The headers of a memory mapped file are only written by flush, so the cleared flag has to be
+     * flushed before the data is overwritten.
+     */
+    private static void invalidate(DataAccess da) {
+        da.setHeader(0, 0);
+        da.flush();
+    }
+
+    private static boolean isValid(DataAccess da, Graph graph) {
+        return da.getHeader(0) == VALID
+                && da.getHeader(4) == graph.getNodes()
+                && da.getHeader(8) == graph.getAllEdges().length();
+    }
+
+    public void close() {
+        speeds.close();
+        matches.close();
+    }
+}
@@ -0,0 +1,85 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.routing.VirtualEdgeIteratorState;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters.Routing;
+
+/**
+ * The fastest weighting but with the speeds of a SpeedOverlay snapshot where available. The
+ * snapshot is fixed for the lifetime of this weighting, i.e. of one route request.
+ *
+ * @author Peter Karich
+ */
+public class TrafficWeighting extends FastestWeighting {
+
+    private static final double SPEED_CONV = 3.6;
+    private final SpeedOverlay overlay;
+    private final double headingPenalty;
+
+    public TrafficWeighting(FlagEncoder encoder, PMap map, SpeedOverlay overlay) {
+        super(encoder, map);
+        this.overlay = overlay;
+        this.headingPenalty = map.getDouble(Routing.HEADING_PENALTY, Routing.DEFAULT_HEADING_PENALTY);
+    }
+
+    @Override
+    public double calcWeight(EdgeIteratorState edge, boolean reverse, int prevOrNextEdgeId) {
+        double speed = getTrafficSpeed(edge, reverse);
+        if (Double.isNaN(speed)) {
+            return super.calcWeight(edge, reverse, prevOrNextEdgeId);
+        }
+
+        if (speed == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double time = edge.getDistance() / speed * SPEED_CONV;
+        if (edge.getBool(EdgeIteratorState.K_UNFAVORED_EDGE, false)) {
+            time += headingPenalty;
+        }
+        return time;
+    }
+
+    @Override
+    public long calcMillis(EdgeIteratorState edge, boolean reverse, int prevOrNextEdgeId) {
+        double speed = getTrafficSpeed(edge, reverse);
+        if (Double.isNaN(speed)) {
+            return super.calcMillis(edge, reverse, prevOrNextEdgeId);
+        }
+
+        if (speed == 0) {
+            throw new IllegalStateException("Traffic speed cannot be 0 for unblocked edge, use access properties to mark edge blocked! "
+                    + "Should only occur for shortest path calculation. See #242.");
+        }
+        return (long) (edge.getDistance() * 3600 / speed);
+    }
+
+    /**
+     * @return the traffic speed for the travel direction or NaN if the overlay has none
+     */
+    protected double getTrafficSpeed(EdgeIteratorState edge, boolean reverse) {
+        return overlay.getSpeed(getOriginalEdgeKey(edge, reverse));
+    }
+
+    public SpeedOverlay getOverlay() {
+        return overlay;
+    }
+
+    /**
+     * Returns the edge key of the travel direction, see SpeedOverlay.createEdgeKey. Virtual edges
+     * of the query graph are mapped to the edge they were split from.
+     */
+    static int getOriginalEdgeKey(EdgeIteratorState edge, boolean reverse) {
+        if (edge instanceof VirtualEdgeIteratorState) {
+            // the key of traveling the virtual edge from its base to its adjacent node
+            int key = ((VirtualEdgeIteratorState) edge).getOriginalTraversalKey();
+            return reverse ? key ^ 1 : key;
+        }
+
+        return GHUtility.createEdgeKey(edge.getBaseNode(), edge.getAdjNode(), edge.getEdge(), reverse);
+    }
+}
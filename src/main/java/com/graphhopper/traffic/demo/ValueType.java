@@ -0,0 +1,29 @@
+package com.graphhopper.traffic.demo;
+
+/**
+ * The type of the value of a RoadEntry.
+ *
+ * @author Peter Karich
+ */
+public enum ValueType {
+    SPEED;
+
+    private final String name = name().toLowerCase();
+
+    /**
+     * @throws IllegalArgumentException if the specified string is not a known value type
+     */
+    public static ValueType fromString(String str) {
+        for (ValueType type : values()) {
+            if (type.name.equalsIgnoreCase(str)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("currently no other value type than 'speed' is supported but was '" + str + "'");
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,72 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.shapes.GHPoint;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class CHRebuilderTest {
+
+    @Test
+    public void testIsCompatible() {
+        assertTrue(CHRebuilder.isCompatible(createRequest(), "car"));
+        assertTrue(CHRebuilder.isCompatible(createRequest().setVehicle("car").setWeighting("fastest"), "car"));
+        assertTrue(CHRebuilder.isCompatible(createRequest().setAlgorithm(Parameters.Algorithms.ASTAR_BI), "car"));
+
+        assertFalse(CHRebuilder.isCompatible(createRequest().setVehicle("bike"), "car"));
+        assertFalse(CHRebuilder.isCompatible(createRequest().setWeighting("shortest"), "car"));
+        assertFalse(CHRebuilder.isCompatible(createRequest().setAlgorithm(Parameters.Algorithms.DIJKSTRA), "car"));
+
+        GHRequest request = createRequest();
+        request.getHints().put(Parameters.CH.DISABLE, true);
+        assertFalse(CHRebuilder.isCompatible(request, "car"));
+
+        request = createRequest();
+        request.getHints().put(TrafficGraphHopper.DEPARTURE_TIME, "2026-10-19T08:00:00+02:00");
+        assertFalse(CHRebuilder.isCompatible(request, "car"));
+
+        request = new GHRequest().addPoint(new GHPoint(50.93, 6.95), 90)
+                .addPoint(new GHPoint(50.94, 6.96));
+        assertFalse(CHRebuilder.isCompatible(request, "car"));
+    }
+
+    @Test
+    public void testSelect() {
+        TestGraph g = new TestGraph();
+        TrafficOverlay overlay = new TrafficOverlay();
+        CHRebuilder rebuilder = new CHRebuilder(overlay);
+        rebuilder.setHopper(g.createHopper(overlay));
+        assertNull(rebuilder.select(createGridRequest()));
+
+        assertTrue(rebuilder.rebuild());
+        assertFalse(rebuilder.rebuild());
+        assertNotNull(rebuilder.select(createGridRequest()));
+
+        // a feed published newer speeds, routes use the uncontracted graph until the swap
+        EdgeUpdates updates = new EdgeUpdates(1);
+        updates.add(SpeedOverlay.createEdgeKey(g.west, false), 10);
+        overlay.publish(overlay.get().apply(updates));
+        assertNull(rebuilder.select(createGridRequest()));
+
+        rebuilder.setStaleRoutes(true);
+        assertNotNull(rebuilder.select(createGridRequest()));
+
+        rebuilder.setStaleRoutes(false);
+        assertTrue(rebuilder.rebuild());
+        assertNotNull(rebuilder.select(createGridRequest()));
+        assertEquals(overlay.get().getVersion(), rebuilder.getVersion());
+    }
+
+    private GHRequest createGridRequest() {
+        return new GHRequest(TestGraph.LAT, TestGraph.LON, TestGraph.LAT, TestGraph.LON + 2 * TestGraph.SPACING);
+    }
+
+    private GHRequest createRequest() {
+        return new GHRequest(50.93, 6.95, 50.94, 6.96);
+    }
+}
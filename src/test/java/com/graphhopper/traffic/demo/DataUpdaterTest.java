@@ -1,7 +1,12 @@
 package com.graphhopper.traffic.demo;
 
-import com.graphhopper.util.Helper;
-import java.io.IOException;
+import static com.graphhopper.traffic.demo.TestGraph.*;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import gnu.trove.list.array.TIntArrayList;
+import java.util.Random;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -11,24 +16,200 @@ import static org.junit.Assert.*;
  */
 public class DataUpdaterTest {
 
+    private final TestGraph g = new TestGraph();
+    private final DataUpdater updater = g.createUpdater(new TrafficOverlay());
+
+    @Test
+    public void testDiff() {
+        RoadData first = new RoadData();
+        first.add(createWest("a", 20, "replace"));
+        first.add(createEast("b", 30, "replace"));
+        updater.feed(first);
+        assertSpeed(20, g.west);
+        assertSpeed(30, g.east);
+        assertEquals(1, updater.getMetrics().getFeeds());
+
+        // a unchanged, b changed
+        RoadData second = new RoadData();
+        second.add(createWest("a", 20, "replace"));
+        second.add(createEast("b", 10, "replace"));
+        long version = updater.getOverlay().get().getVersion();
+        updater.feed(second);
+        assertSpeed(20, g.west);
+        assertSpeed(10, g.east);
+        assertEquals(version + 1, updater.getOverlay().get().getVersion());
+        // only the two directions of the east edge
+        assertEquals(4 + 2, updater.getMetrics().getUpdatedEdges());
+
+        // a removed, its speeds stay until they expire
+        RoadData third = new RoadData();
+        third.add(createEast("b", 10, "replace"));
+        version = updater.getOverlay().get().getVersion();
+        updater.feed(third);
+        assertSpeed(20, g.west);
+        assertSpeed(10, g.east);
+        assertEquals(version, updater.getOverlay().get().getVersion());
+        assertSame(third, updater.getAll());
+    }
+
+    @Test
+    public void testSameInstance() {
+        RoadData data = new RoadData();
+        data.add(createWest("a", 20, "replace"));
+        updater.feed(data);
+        long version = updater.getOverlay().get().getVersion();
+        long lookups = (Long) updater.getMetrics().toMap().get("match_lookups");
+
+        // e.g. an unchanged payload, nothing is diffed or matched
+        updater.feed(data);
+        assertEquals(version, updater.getOverlay().get().getVersion());
+        assertEquals(1, updater.getMetrics().getFeeds());
+        assertEquals(lookups, updater.getMetrics().toMap().get("match_lookups"));
+        assertSpeed(20, g.west);
+    }
+
     @Test
-    public void testFeed() throws IOException {
-        DataUpdater instance = new DataUpdater(null) {
-            @Override
-            protected String fetchJSONString(String url) throws IOException {
-                return Helper.isToString(getClass().getResourceAsStream("example.json"));
+    public void testClash() {
+        // a covers the whole main road and comes first, so it owns the east edge
+        RoadData first = new RoadData();
+        first.add(createEntry("a", 20, "replace", "both", LAT, LON + 0.0001, LAT, LON + 2 * SPACING - 0.0001));
+        first.add(createEast("b", 30, "replace"));
+        updater.feed(first);
+        assertSpeed(20, g.west);
+        assertSpeed(20, g.east);
+
+        // an unchanged a keeps the east edge against the changed b
+        RoadData second = new RoadData();
+        second.add(createEntry("a", 20, "replace", "both", LAT, LON + 0.0001, LAT, LON + 2 * SPACING - 0.0001));
+        second.add(createEast("b", 10, "replace"));
+        updater.feed(second);
+        assertSpeed(20, g.east);
+
+        // without a the unchanged b takes the east edge over
+        RoadData third = new RoadData();
+        third.add(createEast("b", 10, "replace"));
+        updater.feed(third);
+        assertSpeed(10, g.east);
+        assertSpeed(20, g.west);
+    }
+
+    @Test
+    public void testReset() {
+        RoadData first = new RoadData();
+        first.add(createWest("a", 20, "replace"));
+        updater.feed(first);
+        assertSpeed(20, g.west);
+
+        RoadData second = new RoadData();
+        second.add(createWest("a", 20, "reset"));
+        updater.feed(second);
+        SpeedOverlay overlay = updater.getOverlay().get();
+        assertFalse(overlay.hasSpeed(SpeedOverlay.createEdgeKey(g.west, false)));
+        assertFalse(overlay.hasSpeed(SpeedOverlay.createEdgeKey(g.west, true)));
+    }
+
+    @Test
+    public void testForward() {
+        // eastwards over the east edge, which is stored from node 2 to node 1
+        RoadData data = new RoadData();
+        data.add(createEntry("a", 20, "replace", "forward", LAT, LON + SPACING + 0.0001, LAT, LON + 2 * SPACING - 0.0001));
+        TIntArrayList indices = new TIntArrayList(new int[]{0});
+        EdgeUpdates updates = updater.prepare(g.graph, SpeedOverlay.EMPTY, data, indices);
+        assertEquals(1, updates.size());
+        assertEquals(SpeedOverlay.createEdgeKey(g.east, false), updates.getEdgeKey(0));
+
+        updater.feed(data);
+        SpeedOverlay overlay = updater.getOverlay().get();
+        assertEquals(20, overlay.getSpeed(SpeedOverlay.createEdgeKey(g.east, false)), 1e-3);
+        assertFalse(overlay.hasSpeed(SpeedOverlay.createEdgeKey(g.east, true)));
+    }
+
+    @Test
+    public void testInvalidValue() {
+        RoadData data = new RoadData();
+        data.add(createWest("a", -20, "replace"));
+        data.add(createEast("b", Double.NaN, "replace"));
+        EdgeUpdates updates = updater.prepare(g.graph, SpeedOverlay.EMPTY, data, new TIntArrayList(new int[]{0, 1}));
+        assertEquals(0, updates.size());
+        assertEquals(2, updates.getErrors());
+    }
+
+    @Test
+    public void testFlagSpeed() {
+        EncodingManager em = new EncodingManager("bike2");
+        FlagEncoder encoder = em.getEncoder("bike2");
+        Graph graph = new GraphBuilder(em).create();
+        long flags = encoder.setReverseSpeed(encoder.setProperties(10, true, true), 4);
+        int stored = graph.edge(0, 1).setDistance(100).setFlags(flags).getEdge();
+        int inverted = graph.edge(2, 1).setDistance(100).setFlags(flags).getEdge();
+
+        assertEquals(10, DataUpdater.getFlagSpeed(encoder, graph, SpeedOverlay.createEdgeKey(stored, false)), 1e-3);
+        assertEquals(4, DataUpdater.getFlagSpeed(encoder, graph, SpeedOverlay.createEdgeKey(stored, true)), 1e-3);
+        // from node 1 to node 2 is against the stored orientation
+        assertEquals(4, DataUpdater.getFlagSpeed(encoder, graph, SpeedOverlay.createEdgeKey(inverted, false)), 1e-3);
+        assertEquals(10, DataUpdater.getFlagSpeed(encoder, graph, SpeedOverlay.createEdgeKey(inverted, true)), 1e-3);
+    }
+
+    @Test
+    public void testParallelMatching() {
+        // enough entries for several chunks of the matching pool, most of them clash
+        Random random = new Random(42);
+        RoadData data = new RoadData();
+        for (int i = 0; i < 2000; i++) {
+            double jitter = (random.nextDouble() - 0.5) * 0.00004;
+            double value = 5 + 5 * random.nextInt(6);
+            String direction = random.nextBoolean() ? "both" : "forward";
+            switch (random.nextInt(4)) {
+                case 0:
+                    data.add(createEntry("w" + i, value, "replace", direction, LAT + jitter, LON + 0.0001, LAT + jitter, LON + SPACING - 0.0001));
+                    break;
+                case 1:
+                    data.add(createEntry("e" + i, value, "replace", direction, LAT + jitter, LON + 2 * SPACING - 0.0001, LAT + jitter, LON + SPACING + 0.0001));
+                    break;
+                case 2:
+                    data.add(createEntry("n" + i, value, "replace", direction, LAT + SPACING - 0.0001, LON + SPACING + jitter, LAT - SPACING + 0.0001, LON + SPACING + jitter));
+                    break;
+                default:
+                    data.add(createEntry("x" + i, value, "replace", direction, LAT + 0.01, LON, LAT + 0.01, LON + SPACING));
             }
-        };
+        }
+
+        TIntArrayList indices = new TIntArrayList();
+        for (int i = 0; i < data.size(); i++) {
+            indices.add(i);
+        }
+        EdgeUpdates single = updater.prepare(g.graph, SpeedOverlay.EMPTY, data, indices);
+        DataUpdater parallelUpdater = g.createUpdater(new TrafficOverlay()).setMatchingThreads(4);
+        EdgeUpdates parallel;
+        try {
+            parallel = parallelUpdater.prepare(g.graph, SpeedOverlay.EMPTY, data, indices);
+        } finally {
+            parallelUpdater.stop();
+        }
 
-        RoadData data = instance.fetchTrafficData("http://blup.com/somewhere.json");
-        assertEquals(3, data.size());
+        assertEquals(data.size(), parallel.getLookups());
+        assertEquals(single.getLookups(), parallel.getLookups());
+        assertEquals(single.getErrors(), parallel.getErrors());
+        assertTrue(single.getClashes() > 0);
+        assertEquals(single.getClashes(), parallel.getClashes());
+        assertEquals(single.size(), parallel.size());
+        for (int i = 0; i < single.size(); i++) {
+            assertEquals(single.getEdgeKey(i), parallel.getEdgeKey(i));
+            assertEquals(single.getSpeed(i), parallel.getSpeed(i), 1e-6);
+        }
+    }
+
+    private static RoadEntry createWest(String id, double value, String mode) {
+        return createEntry(id, value, mode, "both", LAT, LON + 0.0001, LAT, LON + SPACING - 0.0001);
+    }
 
-        assertEquals(45, data.get(0).getValue(), 1);
-        
-        assertEquals("ST028_0", data.get(1).getId());
-        assertEquals(20, data.get(1).getValue(), 1);
+    private static RoadEntry createEast(String id, double value, String mode) {
+        return createEntry(id, value, mode, "both", LAT, LON + SPACING + 0.0001, LAT, LON + 2 * SPACING - 0.0001);
+    }
 
-        assertEquals("ST065_0", data.get(2).getId());
-        assertEquals(5, data.get(2).getValue(), 1);
+    private void assertSpeed(double expected, int edgeId) {
+        SpeedOverlay overlay = updater.getOverlay().get();
+        assertEquals(expected, overlay.getSpeed(SpeedOverlay.createEdgeKey(edgeId, false)), 1e-3);
+        assertEquals(expected, overlay.getSpeed(SpeedOverlay.createEdgeKey(edgeId, true)), 1e-3);
     }
 }
@@ -0,0 +1,30 @@
+package com.graphhopper.traffic.demo;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class FeedMetricsTest {
+
+    @Test
+    public void testHistogram() {
+        FeedMetrics.Histogram histogram = new FeedMetrics.Histogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 1e-6);
+        // 50 is in the bucket [32, 64)
+        assertEquals(63, histogram.getPercentile(0.5));
+        assertEquals(100, histogram.getPercentile(0.99));
+
+        histogram.record(0);
+        assertEquals(0, histogram.getPercentile(0));
+    }
+}
@@ -0,0 +1,74 @@
+package com.graphhopper.traffic.demo;
+
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class FeedSchedulerTest {
+
+    @Test
+    public void testBackoff() {
+        FeedScheduler scheduler = new FeedScheduler(new DataUpdater(null), new IngestQueue(null, 1), 1);
+        FailingSource source = new FailingSource();
+        FeedScheduler.Schedule schedule = scheduler.add(source).setIntervalMillis(60_000).
+                setJitter(0.5).setBackoffMillis(1000, 5000);
+        assertEquals(60_000, schedule.nextDelay(0.5));
+        assertEquals(30_000, schedule.nextDelay(0));
+
+        // not started, so nothing is rescheduled
+        schedule.run();
+        assertEquals(1, schedule.getFailures());
+        assertEquals(1000, schedule.nextDelay(0.5));
+        schedule.run();
+        assertEquals(2000, schedule.nextDelay(0.5));
+        for (int i = 0; i < 40; i++) {
+            schedule.run();
+        }
+        assertEquals(5000, schedule.nextDelay(0.5));
+
+        source.fail = false;
+        schedule.run();
+        assertEquals(0, schedule.getFailures());
+        assertEquals(60_000, schedule.nextDelay(0.5));
+
+        try {
+            scheduler.add(new FailingSource());
+            fail("duplicate name");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testMaxInterval() {
+        FeedScheduler scheduler = new FeedScheduler(new DataUpdater(null), new IngestQueue(null, 1), 1);
+        assertEquals(0, scheduler.getMaxIntervalMillis());
+        scheduler.add(new FailingSource()).setIntervalMillis(600_000);
+        assertEquals(600_000, scheduler.getMaxIntervalMillis());
+
+        DataUpdater updater = new DataUpdater(null).setFeedIntervalMillis(scheduler.getMaxIntervalMillis());
+        // three missed fetches
+        assertEquals(1_800_000, updater.getTTLMillis());
+    }
+
+    private static class FailingSource implements FeedSource {
+
+        boolean fail = true;
+
+        @Override
+        public String getName() {
+            return "failing";
+        }
+
+        @Override
+        public RoadData fetch() throws IOException {
+            if (fail) {
+                throw new IOException("unavailable");
+            }
+            return new RoadData();
+        }
+    }
+}
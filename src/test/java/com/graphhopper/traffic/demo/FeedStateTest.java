@@ -0,0 +1,56 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.traffic.demo.FeedState.FeedDiff;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class FeedStateTest {
+
+    @Test
+    public void testDiff() {
+        FeedState state = new FeedState();
+        RoadData first = new RoadData();
+        first.add(new RoadEntry("a", Arrays.asList(new Point(50.9, 6.9)), 20, "speed", "replace"));
+        first.add(new RoadEntry("b", Arrays.asList(new Point(50.8, 6.8)), 5, "speed", "replace"));
+        first.add(new RoadEntry("c", Arrays.asList(new Point(50.7, 6.7)), 45, "speed", "replace"));
+        FeedDiff diff = state.diff(first);
+        assertEquals(3, diff.getAdded().size());
+        assertTrue(diff.getChanged().isEmpty());
+        state.apply(first, diff);
+        assertEquals(3, state.size());
+
+        RoadData second = new RoadData();
+        // unchanged
+        second.add(new RoadEntry("a", Arrays.asList(new Point(50.9, 6.9)), 20, "speed", "replace"));
+        // different value
+        second.add(new RoadEntry("b", Arrays.asList(new Point(50.8, 6.8)), 20, "speed", "replace"));
+        // different geometry
+        second.add(new RoadEntry("c", Arrays.asList(new Point(50.7, 6.71)), 45, "speed", "replace"));
+        second.add(new RoadEntry("d", Arrays.asList(new Point(50.6, 6.6)), 5, "speed", "replace"));
+        diff = state.diff(second);
+        assertEquals(1, diff.getUnchanged());
+        assertEquals(3, diff.getAdded().get(0));
+        assertEquals(1, diff.getAdded().size());
+        assertEquals(2, diff.getChanged().size());
+        assertTrue(diff.getRemoved().isEmpty());
+        state.apply(second, diff);
+
+        RoadData third = new RoadData();
+        third.add(new RoadEntry("d", Arrays.asList(new Point(50.6, 6.6)), 5, "speed", "replace"));
+        diff = state.diff(third);
+        assertEquals(1, diff.getUnchanged());
+        List<String> removed = new ArrayList<>(diff.getRemoved());
+        Collections.sort(removed);
+        assertEquals(Arrays.asList("a", "b", "c"), removed);
+        state.apply(third, diff);
+        assertEquals(1, state.size());
+    }
+}
@@ -0,0 +1,77 @@
+package com.graphhopper.traffic.demo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class HttpFeedSourceTest {
+
+    @Test
+    public void testFetch() throws IOException {
+        HttpFeedSource instance = new HttpFeedSource("test", "http://blup.com/somewhere.json", new OpenTrafficParser(), new FeedMetrics()) {
+            @Override
+            protected InputStream download() throws IOException {
+                return new ByteArrayInputStream(readExample());
+            }
+        };
+
+        RoadData data = instance.fetch();
+        assertEquals(3, data.size());
+
+        assertEquals(45, data.get(0).getValue(), 1);
+        
+        assertEquals("ST028_0", data.get(1).getId());
+        assertEquals(20, data.get(1).getValue(), 1);
+
+        assertEquals("ST065_0", data.get(2).getId());
+        assertEquals(5, data.get(2).getValue(), 1);
+    }
+
+    @Test
+    public void testUnchangedPayload() throws IOException {
+        final byte[][] payload = {readExample()};
+        FeedMetrics metrics = new FeedMetrics();
+        HttpFeedSource instance = new HttpFeedSource("test", "http://blup.com/somewhere.json", new OpenTrafficParser(), metrics) {
+            @Override
+            protected InputStream download() throws IOException {
+                return payload[0] == null ? null : new ByteArrayInputStream(payload[0]);
+            }
+        };
+
+        RoadData data = instance.fetch();
+        // parsed while hashing, but the previous instance is returned
+        assertSame(data, instance.fetch());
+        assertEquals(2, metrics.getParse().getCount());
+        assertEquals(1L, metrics.toMap().get("unchanged_fetches"));
+
+        // not modified
+        payload[0] = null;
+        assertSame(data, instance.fetch());
+        assertEquals(2, metrics.getParse().getCount());
+        assertEquals(2L, metrics.toMap().get("unchanged_fetches"));
+
+        payload[0] = "{\"features\":[]}".getBytes("UTF-8");
+        RoadData changed = instance.fetch();
+        assertNotSame(data, changed);
+        assertEquals(0, changed.size());
+    }
+
+    private byte[] readExample() throws IOException {
+        try (InputStream is = getClass().getResourceAsStream("example.json")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
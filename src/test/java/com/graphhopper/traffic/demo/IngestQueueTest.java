@@ -0,0 +1,75 @@
+package com.graphhopper.traffic.demo;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class IngestQueueTest {
+
+    @Test
+    public void testMerge() {
+        RoadData first = new RoadData();
+        first.add(new RoadEntry("a", Arrays.asList(new Point(50.9, 6.9), new Point(50.91, 6.9)), 20, "speed", "replace"));
+        first.add(new RoadEntry("b", Arrays.asList(new Point(50.8, 6.8)), 5, "speed", "replace"));
+
+        RoadData second = new RoadData();
+        second.add(new RoadEntry("c", Arrays.asList(new Point(50.7, 6.7)), 45, "speed", "reset"));
+        second.add(new RoadEntry("a", Arrays.asList(new Point(50.9, 6.9)), 5, "speed", "replace"));
+
+        RoadData merged = IngestQueue.merge(Arrays.asList(first, second));
+        assertEquals(3, merged.size());
+        assertEquals("a", merged.getId(0));
+        assertEquals(5, merged.getValue(0), 1e-6);
+        assertEquals(1, merged.getPointEnd(0) - merged.getPointStart(0));
+        assertEquals("b", merged.getId(1));
+        assertEquals(50.8, merged.getLat(merged.getPointStart(1)), 1e-6);
+        assertEquals("c", merged.getId(2));
+        assertEquals(Mode.RESET, merged.getMode(2));
+    }
+
+    @Test
+    public void testOfferWhenFull() {
+        IngestQueue queue = new IngestQueue(null, 1);
+        assertEquals(1, queue.offer(new RoadData()));
+        assertEquals(-1, queue.offer(new RoadData()));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testPolledAndPushed() {
+        IngestQueue queue = new IngestQueue(null, 4);
+        RoadData polled = new RoadData();
+        polled.add(new RoadEntry("a", Arrays.asList(new Point(50.9, 6.9)), 20, "speed", "replace"));
+        polled.add(new RoadEntry("b", Arrays.asList(new Point(50.8, 6.8)), 30, "speed", "replace"));
+        assertSame(polled, queue.collect(Arrays.asList(new IngestQueue.Batch(1, polled, true)), 0, 1000));
+
+        // a push does not remove the polled entries
+        RoadData push = new RoadData();
+        push.add(new RoadEntry("b", Arrays.asList(new Point(50.8, 6.8)), 5, "speed", "replace"));
+        push.add(new RoadEntry("c", Arrays.asList(new Point(50.7, 6.7)), 10, "speed", "replace"));
+        RoadData data = queue.collect(Arrays.asList(new IngestQueue.Batch(2, push, false)), 100, 1000);
+        assertEquals(3, data.size());
+        assertEquals("a", data.getId(0));
+        assertEquals("b", data.getId(1));
+        assertEquals(5, data.getValue(1), 1e-6);
+        assertEquals("c", data.getId(2));
+
+        // the same polled instance again, nothing changed
+        assertSame(data, queue.collect(Arrays.asList(new IngestQueue.Batch(3, polled, true)), 500, 1000));
+
+        // the next poll keeps the pushed entries
+        RoadData nextPolled = new RoadData();
+        nextPolled.add(polled.get(0));
+        nextPolled.add(polled.get(1));
+        data = queue.collect(Arrays.asList(new IngestQueue.Batch(3, nextPolled, true)), 900, 1000);
+        assertEquals(3, data.size());
+        assertEquals(5, data.getValue(1), 1e-6);
+
+        // until they are older than the ttl
+        assertSame(nextPolled, queue.collect(Arrays.asList(new IngestQueue.Batch(4, nextPolled, true)), 1101, 1000));
+    }
+}
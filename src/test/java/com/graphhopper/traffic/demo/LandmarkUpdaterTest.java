@@ -0,0 +1,135 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.routing.lm.PrepareLandmarks;
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.RAMDirectory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class LandmarkUpdaterTest {
+
+    private final TestGraph g = new TestGraph();
+    private final QueueExecutor executor = new QueueExecutor();
+    private final LandmarkUpdater updater = new LandmarkUpdater(2, 1);
+
+    @Before
+    public void setUp() {
+        TrafficWeighting weighting = createWeighting(0);
+        PrepareLandmarks prepare = new PrepareLandmarks(new RAMDirectory(), g.graph, weighting, TraversalMode.NODE_BASED, 2, 1);
+        updater.start(g.createHopper(new TrafficOverlay()), g.encoder, prepare, executor);
+    }
+
+    @Test
+    public void testRaiseBound() {
+        int westKey = SpeedOverlay.createEdgeKey(g.west, false);
+        // slower than the flag speed
+        assertEquals(0, updater.check(g.graph, createUpdates(westKey, 40), 1));
+        assertTrue(updater.isValid());
+        assertTrue(executor.tasks.isEmpty());
+
+        assertEquals(1, updater.check(g.graph, createUpdates(westKey, 60), 2));
+        assertFalse(updater.isValid());
+        assertEquals(1, executor.tasks.size());
+
+        // the bound is 60 now
+        assertEquals(0, updater.check(g.graph, createUpdates(westKey, 55), 3));
+        assertEquals(1, updater.check(g.graph, createUpdates(westKey, 70), 4));
+        // the queued preparation picks up the new bound
+        assertEquals(1, executor.tasks.size());
+        // the other direction still has the flag speed as bound
+        assertEquals(1, updater.check(g.graph, createUpdates(SpeedOverlay.createEdgeKey(g.west, true), 60), 5));
+    }
+
+    @Test
+    public void testRevert() {
+        int eastKey = SpeedOverlay.createEdgeKey(g.east, true);
+        assertEquals(0, updater.check(g.graph, createUpdates(eastKey, Double.NaN), 1));
+        assertTrue(updater.isValid());
+
+        assertEquals(1, updater.check(g.graph, createUpdates(eastKey, 80), 2));
+        // a revert does not lower or raise the bound
+        assertEquals(0, updater.check(g.graph, createUpdates(eastKey, Double.NaN), 3));
+        assertEquals(0, updater.check(g.graph, createUpdates(eastKey, 75), 4));
+        assertEquals(1, executor.tasks.size());
+    }
+
+    @Test
+    public void testInvalidFrom() {
+        LandmarkUpdater.Landmarks landmarks = updater.getCurrent();
+        assertTrue(landmarks.isValid(createWeighting(7)));
+
+        updater.check(g.graph, createUpdates(SpeedOverlay.createEdgeKey(g.north, false), 90), 5);
+        assertNull(updater.getCurrent());
+        assertEquals(5, landmarks.invalidFrom);
+        // requests which fetched the landmarks before the check still use them for older versions
+        assertTrue(landmarks.isValid(createWeighting(4)));
+        assertFalse(landmarks.isValid(createWeighting(5)));
+    }
+
+    @Test
+    public void testCompatible() {
+        assertTrue(updater.isCompatible(new HintsMap("fastest").setVehicle("car")));
+        HintsMap departure = new HintsMap("fastest").setVehicle("car");
+        departure.put(TrafficGraphHopper.DEPARTURE_TIME, "2026-10-19T08:00:00+02:00");
+        assertFalse(updater.isCompatible(departure));
+        assertTrue(updater.isCovered(departure));
+        assertFalse(updater.isCovered(new HintsMap("shortest").setVehicle("car")));
+    }
+
+    private TrafficWeighting createWeighting(long version) {
+        return new TrafficWeighting(g.encoder, new HintsMap("fastest"), new SpeedOverlay(version, new float[0]));
+    }
+
+    private static EdgeUpdates createUpdates(int edgeKey, double speed) {
+        EdgeUpdates updates = new EdgeUpdates(1);
+        updates.add(edgeKey, speed);
+        return updates;
+    }
+
+    /**
+     * Keeps the preparations instead of running them.
+     */
+    private static class QueueExecutor extends AbstractExecutorService {
+
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return tasks;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.graphhopper.traffic.demo;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class MatchCacheTest {
+
+    @Test
+    public void testGeometryChange() {
+        MatchCache cache = new MatchCache();
+        RoadData data = new RoadData();
+        data.add(new RoadEntry("ST018_0", Arrays.asList(new Point(50.95, 6.97), new Point(50.96, 6.98)), 20, "speed", "replace"));
+        data.add(new RoadEntry("ST018_0", Arrays.asList(new Point(50.95, 6.97), new Point(50.961, 6.98)), 20, "speed", "replace"));
+        int hash = data.getGeometryHash(0);
+        EdgeMatch match = new EdgeMatch(new int[]{4}, new boolean[]{true});
+        cache.put("ST018_0", hash, match);
+
+        assertSame(match, cache.get("ST018_0", hash));
+        assertNull(cache.get("ST018_1", hash));
+
+        int otherHash = data.getGeometryHash(1);
+        assertNotEquals(hash, otherHash);
+        assertNull(cache.get("ST018_0", otherHash));
+    }
+
+    @Test
+    public void testRemoveAndRetain() {
+        MatchCache cache = new MatchCache();
+        EdgeMatch match = new EdgeMatch(new int[]{4}, new boolean[]{false});
+        cache.put("a", 1, match);
+        cache.put("b", 2, match);
+        cache.put("c", 3, match);
+
+        cache.remove("a");
+        assertNull(cache.get("a", 1));
+        assertEquals(2, cache.size());
+
+        RoadData data = new RoadData();
+        data.add(new RoadEntry("c", Arrays.asList(new Point(50.95, 6.97)), 20, "speed", "replace"));
+        data.add(new RoadEntry("d", Arrays.asList(new Point(50.96, 6.98)), 20, "speed", "replace"));
+        assertEquals(1, cache.retain(data));
+        assertEquals(1, cache.size());
+        assertSame(match, cache.get("c", 3));
+    }
+}
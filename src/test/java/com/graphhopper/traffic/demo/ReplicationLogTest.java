@@ -0,0 +1,75 @@
+package com.graphhopper.traffic.demo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class ReplicationLogTest {
+
+    @Test
+    public void testPoll() throws Exception {
+        TrafficOverlay overlay = new TrafficOverlay();
+        ReplicationLog log = new ReplicationLog(overlay, 2);
+        assertNull(log.poll(0, 0));
+
+        publish(overlay, log, 4, 20);
+        publish(overlay, log, 5, 30);
+        ReplicationLog.Batch batch = log.poll(0, 0);
+        assertFalse(batch.isFull());
+        assertEquals(2, batch.getVersion());
+        assertEquals(2, batch.getUpdates().size());
+
+        batch = log.poll(1, 0);
+        assertFalse(batch.isFull());
+        assertEquals(1, batch.getUpdates().size());
+        assertEquals(5, batch.getUpdates().getEdgeKey(0));
+
+        // version 1 is dropped, a follower at 0 gets all speeds
+        publish(overlay, log, 4, Double.NaN);
+        batch = log.poll(0, 0);
+        assertTrue(batch.isFull());
+        assertEquals(3, batch.getVersion());
+        assertEquals(1, batch.getUpdates().size());
+        assertEquals(30, batch.getUpdates().getSpeed(0), 1e-6);
+
+        // a follower ahead of a restarted leader
+        assertTrue(log.poll(10, 0).isFull());
+        assertNull(log.poll(3, 10));
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        EdgeUpdates updates = new EdgeUpdates(2);
+        updates.add(3, 25);
+        updates.add(8, Double.NaN);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ReplicationLog.write(new ReplicationLog.Batch(false, 7, updates), 10, 5, out);
+
+        ReplicationLog.Batch batch = ReplicationLog.read(new ByteArrayInputStream(out.toByteArray()), 10, 5);
+        assertFalse(batch.isFull());
+        assertEquals(7, batch.getVersion());
+        assertEquals(2, batch.getUpdates().size());
+        assertEquals(3, batch.getUpdates().getEdgeKey(0));
+        assertEquals(25, batch.getUpdates().getSpeed(0), 1e-6);
+        assertTrue(Double.isNaN(batch.getUpdates().getSpeed(1)));
+
+        try {
+            ReplicationLog.read(new ByteArrayInputStream(out.toByteArray()), 10, 6);
+            fail();
+        } catch (IllegalStateException ex) {
+        }
+    }
+
+    private void publish(TrafficOverlay overlay, ReplicationLog log, int edgeKey, double speed) {
+        EdgeUpdates updates = new EdgeUpdates(1);
+        updates.add(edgeKey, speed);
+        SpeedOverlay next = overlay.get().apply(updates);
+        overlay.publish(next);
+        log.append(next.getVersion(), updates);
+    }
+}
@@ -0,0 +1,110 @@
+package com.graphhopper.traffic.demo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class RoadDataCodecTest {
+
+    @Test
+    public void testWriteRead() throws IOException {
+        RoadData data = new RoadData();
+        data.add(new RoadEntry("a", Arrays.asList(new Point(50.9, 6.9), new Point(50.912345, 6.899999)), 20, "speed", "replace"));
+        data.add(new RoadEntry(null, Arrays.asList(new Point(-33.8, -151.2)), 45, "speed", "reset"));
+        data.add(new RoadEntry("ü", Arrays.<Point>asList(), 5.5, "speed", "replace"));
+        data.addPoint(50.9, 6.9);
+        data.addEntry("d", 10, ValueType.SPEED, Mode.REPLACE, Direction.BACKWARD);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RoadDataCodec.write(data, out);
+        RoadData read = RoadDataCodec.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(4, read.size());
+        assertEquals("a", read.getId(0));
+        assertEquals(20, read.getValue(0), 1e-6);
+        assertEquals(2, read.getPointEnd(0) - read.getPointStart(0));
+        assertEquals(50.912345, read.getLat(1), 1e-7);
+        assertEquals(6.899999, read.getLon(1), 1e-7);
+
+        assertNull(read.getId(1));
+        assertEquals(Mode.RESET, read.getMode(1));
+        assertEquals(-33.8, read.getLat(2), 1e-7);
+        assertEquals(-151.2, read.getLon(2), 1e-7);
+
+        assertEquals("ü", read.getId(2));
+        assertEquals(5.5, read.getValue(2), 1e-6);
+        assertEquals(0, read.getPointEnd(2) - read.getPointStart(2));
+        assertEquals(Direction.BOTH, read.getDirection(2));
+        assertEquals(Direction.BACKWARD, read.getDirection(3));
+    }
+
+    @Test
+    public void testInvalid() throws IOException {
+        try {
+            RoadDataCodec.read(new ByteArrayInputStream("[{}]".getBytes("UTF-8")));
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testInvalidValue() throws IOException {
+        for (double value : new double[]{-5, Double.NaN, Double.POSITIVE_INFINITY}) {
+            RoadData data = new RoadData();
+            data.addPoint(50.9, 6.9);
+            data.addEntry("a", value, ValueType.SPEED, Mode.REPLACE);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            RoadDataCodec.write(data, out);
+            try {
+                RoadDataCodec.read(new ByteArrayInputStream(out.toByteArray()));
+                fail("value " + value);
+            } catch (IllegalArgumentException ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().contains("not below 0"));
+            }
+        }
+    }
+
+    @Test
+    public void testOversizedId() throws IOException {
+        // a request of a few bytes must not allocate 2GB
+        byte[] bytes = createHeader(Integer.MAX_VALUE);
+        try {
+            RoadDataCodec.read(new ByteArrayInputStream(bytes), bytes.length);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("id length"));
+        }
+
+        // below the maximum, but beyond the end of the request
+        bytes = createHeader(RoadDataCodec.MAX_ID_LENGTH);
+        try {
+            RoadDataCodec.read(new ByteArrayInputStream(bytes), bytes.length);
+            fail();
+        } catch (EOFException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("exceeds the remaining"));
+        }
+    }
+
+    private static byte[] createHeader(int idLength) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(('R' << 8) | 'D');
+        out.writeByte(2);
+        // one entry without points
+        RoadDataCodec.writeVarInt(out, 1);
+        RoadDataCodec.writeVarInt(out, 0);
+        RoadDataCodec.writeVarInt(out, idLength);
+        out.write(new byte[]{'a', 'b'});
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
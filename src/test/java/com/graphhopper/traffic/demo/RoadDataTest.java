@@ -1,5 +1,6 @@
 package com.graphhopper.traffic.demo;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.io.StringReader;
@@ -34,5 +35,62 @@ public class RoadDataTest {
         StringWriter sWriter = new StringWriter();
         mapper.writeValue(sWriter, data);
         assertEquals("[{\"points\":[[11.1,42.4]],\"value\":2.0,\"value_type\":\"speed\",\"mode\":\"replace\",\"id\":\"1\"}]", sWriter.toString());
+
+        RoadEntry forward = new RoadEntry("2", Arrays.asList(new Point(42.4, 11.1)), 2, "speed", "replace");
+        forward.setDirection("forward");
+        data = new RoadData();
+        data.add(forward);
+        sWriter = new StringWriter();
+        mapper.writeValue(sWriter, data);
+        assertEquals("[{\"points\":[[11.1,42.4]],\"value\":2.0,\"value_type\":\"speed\",\"mode\":\"replace\",\"direction\":\"forward\",\"id\":\"2\"}]", sWriter.toString());
+    }
+
+    @Test
+    public void testColumns() throws IOException {
+        RoadData data = mapper.readValue(new StringReader(("[{'id':'a', 'points': [[11.1, 42.4], [11.2, 42.5]], 'value': 20, 'value_type': 'speed', 'mode':'REPLACE'},"
+                + "{'id':'b', 'points': [[11.3, 42.6]], 'value': 5, 'value_type': 'SPEED', 'mode':'replace'}]").replaceAll("'", "\"")), RoadData.class);
+        assertEquals(2, data.size());
+        assertEquals(0, data.getPointStart(0));
+        assertEquals(2, data.getPointEnd(0));
+        assertEquals(2, data.getPointStart(1));
+        assertEquals(3, data.getPointEnd(1));
+        assertEquals(42.6, data.getLat(2), 1e-6);
+        assertEquals(11.3, data.getLon(2), 1e-6);
+        assertEquals(Mode.REPLACE, data.getMode(0));
+        assertEquals(ValueType.SPEED, data.getValueType(1));
+        assertEquals("b", data.getId(1));
+        assertEquals(5, data.getValue(1), 1e-6);
+
+        RoadEntry entry = data.get(0);
+        assertEquals("replace", entry.getMode());
+        assertEquals(2, entry.getPoints().size());
+    }
+
+    @Test
+    public void testMissingValue() throws IOException {
+        try {
+            mapper.readValue(new StringReader("[{'id':'1', 'points': [[11.1, 42.4]], 'value_type': 'speed', 'mode':'replace'}]".replaceAll("'", "\"")), RoadData.class);
+            fail("a missing value must not close the road");
+        } catch (JsonProcessingException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("no value"));
+        }
+
+        try {
+            mapper.readValue(new StringReader("[{'id':'1', 'points': [[11.1, 42.4]], 'value': 'fast', 'value_type': 'speed', 'mode':'replace'}]".replaceAll("'", "\"")), RoadData.class);
+            fail();
+        } catch (JsonProcessingException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("has to be a number"));
+        }
+
+        try {
+            mapper.readValue(new StringReader("[{'id':'1', 'points': [[11.1, 42.4]], 'value': -10, 'value_type': 'speed', 'mode':'replace'}]".replaceAll("'", "\"")), RoadData.class);
+            fail("a negative speed would be a negative weight");
+        } catch (JsonProcessingException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("not below 0"));
+        }
+
+        // a reset does not need a value
+        RoadData data = mapper.readValue(new StringReader("[{'id':'1', 'points': [[11.1, 42.4]], 'value_type': 'speed', 'mode':'reset'}]".replaceAll("'", "\"")), RoadData.class);
+        assertEquals(Mode.RESET, data.getMode(0));
     }
 }
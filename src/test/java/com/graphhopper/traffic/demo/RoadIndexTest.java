@@ -0,0 +1,87 @@
+package com.graphhopper.traffic.demo;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class RoadIndexTest {
+
+    @Test
+    public void testQueryAndUpdate() {
+        FeedState state = new FeedState();
+        RoadIndex index = new RoadIndex(0.01);
+        RoadData first = new RoadData();
+        first.add(new RoadEntry("a", Arrays.asList(new Point(50.905, 6.905), new Point(50.935, 6.905)), 20, "speed", "replace"));
+        first.add(new RoadEntry("b", Arrays.asList(new Point(50.805, 6.805)), 5, "speed", "replace"));
+        FeedState.FeedDiff diff = state.diff(first);
+        state.apply(first, diff);
+        index.update(first, diff);
+        assertEquals(2, index.size());
+
+        // a crosses the box without a point in it
+        RoadData result = index.query(50.91, 6.9, 50.92, 6.91);
+        assertEquals(1, result.size());
+        assertEquals("a", result.getId(0));
+        assertEquals(2, result.getPointEnd(0) - result.getPointStart(0));
+
+        assertEquals(2, index.query(-90, -180, 90, 180).size());
+        assertEquals(0, index.query(10, 10, 11, 11).size());
+
+        RoadData second = new RoadData();
+        second.add(new RoadEntry("b", Arrays.asList(new Point(50.915, 6.905)), 5, "speed", "replace"));
+        diff = state.diff(second);
+        state.apply(second, diff);
+        index.update(second, diff);
+        assertEquals(1, index.size());
+        result = index.query(50.91, 6.9, 50.92, 6.91);
+        assertEquals(1, result.size());
+        assertEquals("b", result.getId(0));
+        assertEquals(0, index.query(50.8, 6.8, 50.81, 6.81).size());
+    }
+
+    @Test
+    public void testClearedState() {
+        FeedState state = new FeedState();
+        RoadIndex index = new RoadIndex(0.01);
+        RoadData first = new RoadData();
+        first.add(new RoadEntry("a", Arrays.asList(new Point(50.905, 6.905)), 20, "speed", "replace"));
+        first.add(new RoadEntry("b", Arrays.asList(new Point(50.805, 6.805)), 5, "speed", "replace"));
+        FeedState.FeedDiff diff = state.diff(first);
+        state.apply(first, diff);
+        index.update(first, diff);
+
+        // like after an expiry: the diff reports b as added and nothing as removed
+        state.clear();
+        RoadData second = new RoadData();
+        second.add(new RoadEntry("b", Arrays.asList(new Point(50.805, 6.805)), 5, "speed", "replace"));
+        diff = state.diff(second);
+        assertTrue(diff.getRemoved().isEmpty());
+        index.update(second, diff);
+        assertEquals(1, index.size());
+        assertEquals(0, index.query(50.9, 6.9, 50.91, 6.91).size());
+        assertEquals("b", index.query(-90, -180, 90, 180).getId(0));
+    }
+
+    @Test
+    public void testQueryTile() {
+        FeedState state = new FeedState();
+        RoadIndex index = new RoadIndex(0.01);
+        RoadData data = new RoadData();
+        // Cologne
+        data.add(new RoadEntry("a", Arrays.asList(new Point(50.94, 6.96)), 20, "speed", "replace"));
+        index.update(data, state.diff(data));
+
+        // tile 10/531/343 contains Cologne
+        assertEquals(1, index.queryTile(10, 531, 343).size());
+        assertEquals(0, index.queryTile(10, 530, 343).size());
+        try {
+            index.queryTile(1, 2, 0);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+}
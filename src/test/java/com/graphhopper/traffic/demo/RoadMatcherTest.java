@@ -0,0 +1,65 @@
+package com.graphhopper.traffic.demo;
+
+import static com.graphhopper.traffic.demo.TestGraph.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class RoadMatcherTest {
+
+    @Test
+    public void testThroughJunction() {
+        TestGraph g = new TestGraph();
+        RoadMatcher matcher = new RoadMatcher(g.graph, g.index);
+        // slightly north of the main road like a real feed, so the point at the junction is
+        // closer to the side street
+        double lat = LAT + 0.00002;
+        RoadData data = new RoadData();
+        data.add(createEntry("eastwards", 20, "replace", "both", lat, LON, lat, LON + SPACING, lat, LON + 2 * SPACING));
+        data.add(createEntry("westwards", 20, "replace", "both", lat, LON + 2 * SPACING, lat, LON + SPACING, lat, LON));
+
+        EdgeMatch match = matcher.match(data, 0);
+        assertEquals(match.toString(), 2, match.size());
+        assertEquals(g.west, match.getEdgeId(0));
+        assertFalse(match.isReverse(0));
+        // stored from node 2 to node 1, but the direction is relative to the node ids
+        assertEquals(g.east, match.getEdgeId(1));
+        assertFalse(match.isReverse(1));
+
+        match = matcher.match(data, 1);
+        assertEquals(match.toString(), 2, match.size());
+        assertEquals(g.east, match.getEdgeId(0));
+        assertTrue(match.isReverse(0));
+        assertEquals(g.west, match.getEdgeId(1));
+        assertTrue(match.isReverse(1));
+    }
+
+    @Test
+    public void testSideStreet() {
+        TestGraph g = new TestGraph();
+        RoadMatcher matcher = new RoadMatcher(g.graph, g.index);
+        double lon = LON + SPACING + 0.00003;
+        RoadData data = new RoadData();
+        data.add(createEntry("southwards", 20, "replace", "both", LAT + SPACING, lon, LAT, lon, LAT - SPACING, lon));
+
+        EdgeMatch match = matcher.match(data, 0);
+        assertEquals(match.toString(), 2, match.size());
+        // from node 3 to node 1
+        assertEquals(g.north, match.getEdgeId(0));
+        assertTrue(match.isReverse(0));
+        assertEquals(g.south, match.getEdgeId(1));
+        assertFalse(match.isReverse(1));
+    }
+
+    @Test
+    public void testFarAway() {
+        TestGraph g = new TestGraph();
+        RoadMatcher matcher = new RoadMatcher(g.graph, g.index);
+        RoadData data = new RoadData();
+        data.add(createEntry("elsewhere", 20, "replace", "both", LAT + 0.01, LON, LAT + 0.01, LON + SPACING));
+        assertTrue(matcher.match(data, 0).isEmpty());
+    }
+}
@@ -0,0 +1,41 @@
+package com.graphhopper.traffic.demo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class RoadsServletTest {
+
+    @Test
+    public void testRepresentation() throws IOException {
+        byte[] raw = "[{\"id\":\"a\"}]".getBytes("UTF-8");
+        RoadsServlet.Representation rep = new RoadsServlet.Representation("j", raw);
+        assertEquals(rep.etag, new RoadsServlet.Representation("j", raw).etag);
+        assertNotEquals(rep.etag, new RoadsServlet.Representation("j", "[]".getBytes("UTF-8")).etag);
+        assertNotEquals(rep.etag, rep.gzipEtag);
+
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(rep.gzip));
+        byte[] unzipped = new byte[raw.length];
+        int read = 0;
+        while (read < raw.length) {
+            read += in.read(unzipped, read, raw.length - read);
+        }
+        assertArrayEquals(raw, unzipped);
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testMatches() {
+        assertFalse(RoadsServlet.matches(null, "\"a\""));
+        assertTrue(RoadsServlet.matches("\"a\"", "\"a\""));
+        assertTrue(RoadsServlet.matches("\"b\", W/\"a\"", "\"a\""));
+        assertTrue(RoadsServlet.matches("*", "\"a\""));
+        assertFalse(RoadsServlet.matches("\"b\"", "\"a\""));
+    }
+}
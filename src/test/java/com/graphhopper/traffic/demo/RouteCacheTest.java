@@ -0,0 +1,81 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class RouteCacheTest {
+
+    @Test
+    public void testCreateKey() {
+        GHRequest request = new GHRequest(50.93, 6.95, 50.94, 6.96);
+        request.getHints().put("instructions", false).put("calc_points", true);
+        GHRequest other = new GHRequest(50.93, 6.95, 50.94, 6.96);
+        other.getHints().put("calc_points", true).put("instructions", false);
+        assertEquals(RouteCache.createKey(request), RouteCache.createKey(other));
+
+        assertNotEquals(RouteCache.createKey(request), RouteCache.createKey(new GHRequest(50.93, 6.95, 50.94, 6.961)));
+
+        request.getHints().put(TrafficGraphHopper.DEPARTURE_TIME, "2026-10-19T08:00:00+02:00");
+        assertNull(RouteCache.createKey(request));
+    }
+
+    @Test
+    public void testInvalidate() {
+        RouteCache cache = new RouteCache(10, 60_000);
+        GHResponse first = new GHResponse();
+        GHResponse second = new GHResponse();
+        assertTrue(cache.put("a", first, new int[]{1, 5, 9}, cache.getStamp(), 0));
+        assertTrue(cache.put("b", second, new int[]{2, 3}, cache.getStamp(), 0));
+        assertSame(first, cache.get("a", 10));
+
+        EdgeUpdates updates = new EdgeUpdates(2);
+        // the reverse direction of edge 5
+        updates.add(SpeedOverlay.createEdgeKey(5, true), 20);
+        updates.add(SpeedOverlay.createEdgeKey(7, false), 20);
+        assertEquals(1, cache.invalidate(updates));
+        assertNull(cache.get("a", 10));
+        assertSame(second, cache.get("b", 10));
+
+        SpeedOverlay previous = SpeedOverlay.EMPTY.apply(updates);
+        updates = new EdgeUpdates(1);
+        updates.add(SpeedOverlay.createEdgeKey(3, false), 30);
+        assertEquals(1, cache.invalidate(previous, previous.apply(updates)));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getInvalidated());
+    }
+
+    @Test
+    public void testStamp() {
+        RouteCache cache = new RouteCache(10, 60_000);
+        long stamp = cache.getStamp();
+        EdgeUpdates updates = new EdgeUpdates(1);
+        updates.add(4, 20);
+        cache.invalidate(updates);
+        // the route was calculated while the feed was published
+        assertFalse(cache.put("a", new GHResponse(), new int[]{1}, stamp, 0));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testBounded() {
+        RouteCache cache = new RouteCache(2, 1000);
+        cache.put("a", new GHResponse(), new int[0], cache.getStamp(), 0);
+        cache.put("b", new GHResponse(), new int[0], cache.getStamp(), 0);
+        // a was used last
+        assertNotNull(cache.get("a", 0));
+        cache.put("c", new GHResponse(), new int[0], cache.getStamp(), 0);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b", 0));
+        assertNotNull(cache.get("a", 0));
+
+        // too old
+        assertNull(cache.get("c", 1001));
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,55 @@
+package com.graphhopper.traffic.demo;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class SpeedExpiryTest {
+
+    @Test
+    public void testExpire() {
+        SpeedExpiry expiry = new SpeedExpiry(1000, 5);
+        long now = 10_000;
+        expiry.touch(1, now);
+        expiry.touch(2, now);
+        expiry.touch(3, now + 500);
+        assertEquals(3, expiry.size());
+
+        TIntArrayList expired = new TIntArrayList();
+        expiry.expire(now + 999, expired);
+        assertTrue(expired.isEmpty());
+
+        // edge key 2 was confirmed again
+        expiry.touch(2, now + 900);
+        expiry.expire(now + 1000, expired);
+        assertEquals(1, expired.size());
+        assertEquals(1, expired.get(0));
+
+        expired.clear();
+        expiry.expire(now + 1500, expired);
+        assertEquals(1, expired.size());
+        assertEquals(3, expired.get(0));
+
+        expired.clear();
+        expiry.remove(2);
+        expiry.expire(now + 10_000, expired);
+        assertTrue(expired.isEmpty());
+        assertEquals(0, expiry.size());
+    }
+
+    @Test
+    public void testLongPause() {
+        SpeedExpiry expiry = new SpeedExpiry(1000, 4);
+        expiry.touch(7, 0);
+        expiry.touch(8, 400);
+        TIntArrayList expired = new TIntArrayList();
+        // several rotations without any call
+        expiry.expire(100_000, expired);
+        expired.sort();
+        assertEquals(new TIntArrayList(new int[]{7, 8}), expired);
+    }
+}
@@ -0,0 +1,68 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.util.GHUtility;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class SpeedOverlayTest {
+
+    @Test
+    public void testEdgeKey() {
+        // same convention as GraphHopper: not reverse is from the lower to the higher node id
+        assertEquals(GHUtility.createEdgeKey(3, 7, 5, false), SpeedOverlay.createEdgeKey(5, false));
+        assertEquals(GHUtility.createEdgeKey(7, 3, 5, true), SpeedOverlay.createEdgeKey(5, false));
+        assertEquals(GHUtility.createEdgeKey(7, 3, 5, false), SpeedOverlay.createEdgeKey(5, true));
+        assertEquals(5, SpeedOverlay.getEdgeId(SpeedOverlay.createEdgeKey(5, true)));
+
+        EdgeMatch match = new EdgeMatch(new int[]{5, 6}, new boolean[]{false, true});
+        assertEquals(SpeedOverlay.createEdgeKey(5, false), match.getEdgeKey(0, true));
+        assertEquals(SpeedOverlay.createEdgeKey(5, true), match.getEdgeKey(0, false));
+        assertEquals(SpeedOverlay.createEdgeKey(6, true), match.getEdgeKey(1, true));
+
+        assertTrue(Direction.BOTH.includes(false));
+        assertTrue(Direction.FORWARD.includes(true));
+        assertFalse(Direction.FORWARD.includes(false));
+        assertTrue(Direction.BACKWARD.includes(false));
+    }
+
+    @Test
+    public void testApplyCreatesNewVersion() {
+        EdgeUpdates updates = new EdgeUpdates(2);
+        updates.add(3, 20);
+        updates.add(10, 5);
+        SpeedOverlay first = SpeedOverlay.EMPTY.apply(updates);
+        assertEquals(1, first.getVersion());
+        assertEquals(20, first.getSpeed(3), 1e-6);
+        assertEquals(5, first.getSpeed(10), 1e-6);
+        assertFalse(first.hasSpeed(4));
+        assertFalse(first.hasSpeed(11));
+
+        updates = new EdgeUpdates(1);
+        updates.add(3, 45);
+        SpeedOverlay second = first.apply(updates);
+        assertEquals(2, second.getVersion());
+        assertEquals(45, second.getSpeed(3), 1e-6);
+        assertEquals(5, second.getSpeed(10), 1e-6);
+
+        // the previous snapshot is unchanged
+        assertEquals(20, first.getSpeed(3), 1e-6);
+    }
+
+    @Test
+    public void testPublish() {
+        TrafficOverlay overlay = new TrafficOverlay();
+        SpeedOverlay next = overlay.get().apply(new EdgeUpdates(0));
+        overlay.publish(next);
+        assertSame(next, overlay.get());
+
+        try {
+            overlay.publish(next);
+            fail("the same version must not be published twice");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.graphhopper.traffic.demo;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class SpeedProfilesTest {
+
+    @Test
+    public void testRecord() {
+        SpeedProfiles profiles = new SpeedProfiles(2, ZoneId.of("UTC"));
+        EdgeUpdates observed = new EdgeUpdates(3);
+        observed.add(4, 20);
+        observed.add(7, 50);
+        observed.add(9, 30);
+        profiles.record(observed, 32);
+
+        assertEquals(2, profiles.size());
+        assertEquals(1, profiles.getRejected());
+        assertEquals(20, profiles.getSpeed(4, 32), 1e-6);
+        assertEquals(50, profiles.getSpeed(7, 32), 1e-6);
+        assertTrue(Double.isNaN(profiles.getSpeed(9, 32)));
+        assertTrue(Double.isNaN(profiles.getSpeed(4, 33)));
+
+        observed = new EdgeUpdates(1);
+        observed.add(4, 70);
+        profiles.record(observed, 32);
+        // moves towards the observation
+        assertEquals(30, profiles.getSpeed(4, 32), 1e-6);
+
+        profiles.clear();
+        assertEquals(0, profiles.size());
+        assertTrue(Double.isNaN(profiles.getSpeed(4, 32)));
+    }
+
+    @Test
+    public void testClosure() {
+        SpeedProfiles profiles = new SpeedProfiles(10, ZoneId.of("UTC"));
+        EdgeUpdates observed = new EdgeUpdates(2);
+        observed.add(4, 30);
+        observed.add(5, 0);
+        profiles.record(observed, 10);
+        assertEquals(0, profiles.getSpeed(5, 10), 1e-6);
+
+        observed = new EdgeUpdates(1);
+        observed.add(4, 0);
+        profiles.record(observed, 10);
+        // not averaged to a slow speed
+        assertEquals(0, profiles.getSpeed(4, 10), 1e-6);
+
+        observed = new EdgeUpdates(1);
+        observed.add(4, 40);
+        profiles.record(observed, 10);
+        assertEquals(40, profiles.getSpeed(4, 10), 1e-6);
+        assertTrue(profiles.hasProfile(5));
+        assertFalse(profiles.hasProfile(6));
+    }
+
+    @Test
+    public void testBucket() {
+        SpeedProfiles profiles = new SpeedProfiles(10, ZoneId.of("Europe/Berlin"));
+        long time = ZonedDateTime.of(2026, 10, 19, 8, 20, 0, 0, ZoneId.of("Europe/Berlin")).toInstant().toEpochMilli();
+        assertEquals(33, profiles.getBucket(time));
+        assertEquals(33, profiles.getBucket(TrafficGraphHopper.parseDepartureTime("2026-10-19T06:20:00Z")));
+        assertEquals(time, TrafficGraphHopper.parseDepartureTime(Long.toString(time)));
+        try {
+            TrafficGraphHopper.parseDepartureTime("tomorrow");
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.graphhopper.traffic.demo;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.Helper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A small car graph for the tests: a main road from west (node 0) over the junction (node 1) to
+ * east (node 2), crossed by a side street from north (node 3) to south (node 4). The east edge is
+ * stored from node 2 to node 1, against the order of the node ids. All edges allow 50km/h in both
+ * directions.
+ *
+ * @author Peter Karich
+ */
+class TestGraph {
+
+    static final double LAT = 50.0;
+    static final double LON = 10.0;
+    // roughly 111m north-south and 71m east-west
+    static final double SPACING = 0.001;
+    static final double FLAG_SPEED = 50;
+    final EncodingManager encodingManager = new EncodingManager("car");
+    final FlagEncoder encoder = encodingManager.getEncoder("car");
+    final GraphHopperStorage graph = new GraphBuilder(encodingManager).create();
+    final int west;
+    final int east;
+    final int north;
+    final int south;
+    final LocationIndex index;
+
+    TestGraph() {
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, LAT, LON);
+        na.setNode(1, LAT, LON + SPACING);
+        na.setNode(2, LAT, LON + 2 * SPACING);
+        na.setNode(3, LAT + SPACING, LON + SPACING);
+        na.setNode(4, LAT - SPACING, LON + SPACING);
+        west = addEdge(0, 1);
+        east = addEdge(2, 1);
+        north = addEdge(3, 1);
+        south = addEdge(1, 4);
+        index = new LocationIndexTree(graph, new RAMDirectory()).prepareIndex();
+    }
+
+    private int addEdge(int from, int to) {
+        NodeAccess na = graph.getNodeAccess();
+        double dist = Helper.DIST_PLANE.calcDist(na.getLatitude(from), na.getLongitude(from), na.getLatitude(to), na.getLongitude(to));
+        return graph.edge(from, to).setDistance(dist).setFlags(encoder.setProperties(FLAG_SPEED, true, true)).getEdge();
+    }
+
+    GraphHopper createHopper(TrafficOverlay overlay) {
+        TrafficGraphHopper hopper = new TrafficGraphHopper(overlay);
+        hopper.setEncodingManager(encodingManager);
+        hopper.setGraphHopperStorage(graph);
+        hopper.setLocationIndex(index);
+        return hopper;
+    }
+
+    DataUpdater createUpdater(TrafficOverlay overlay) {
+        final GraphHopper hopper = createHopper(overlay);
+        DataUpdater updater = new DataUpdater(new ReentrantReadWriteLock().writeLock(), overlay);
+        Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(GraphHopper.class).toInstance(hopper);
+            }
+        }).injectMembers(updater);
+        return updater;
+    }
+
+    /**
+     * @param latLons the points of the entry as lat, lon pairs
+     */
+    static RoadEntry createEntry(String id, double value, String mode, String direction, double... latLons) {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < latLons.length; i += 2) {
+            points.add(new Point(latLons[i], latLons[i + 1]));
+        }
+        RoadEntry entry = new RoadEntry(id, points, value, "speed", mode);
+        entry.setDirection(direction);
+        return entry;
+    }
+}
@@ -0,0 +1,116 @@
+package com.graphhopper.traffic.demo;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.util.Helper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class TrafficStoreTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("traffic-store").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        Helper.removeDir(dir);
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        Graph graph = new GraphBuilder(new EncodingManager("car")).create();
+        graph.edge(0, 1, 100, true);
+        graph.edge(1, 2, 100, true);
+        graph.edge(2, 3, 100, true);
+
+        EdgeUpdates updates = new EdgeUpdates(2);
+        updates.add(0, 20);
+        updates.add(2, 5);
+        SpeedOverlay overlay = SpeedOverlay.EMPTY.apply(updates);
+        MatchCache cache = new MatchCache();
+        cache.put("a", 42, new EdgeMatch(new int[]{0, 2}, new boolean[]{false, true}));
+        cache.put("long id ü", -7, EdgeMatch.EMPTY);
+
+        TrafficStore store = new TrafficStore(dir.getAbsolutePath());
+        store.saveOverlay(overlay, graph);
+        store.saveMatches(cache, graph);
+        store.close();
+
+        store = new TrafficStore(dir.getAbsolutePath());
+        SpeedOverlay loaded = store.loadOverlay(graph);
+        assertEquals(1, loaded.getVersion());
+        assertEquals(20, loaded.getSpeed(0), 1e-6);
+        assertFalse(loaded.hasSpeed(1));
+        assertEquals(5, loaded.getSpeed(2), 1e-6);
+
+        MatchCache loadedCache = new MatchCache();
+        assertEquals(2, store.loadMatches(loadedCache, graph));
+        EdgeMatch match = loadedCache.get("a", 42);
+        assertEquals(2, match.size());
+        assertEquals(2, match.getEdgeId(1));
+        assertFalse(match.isReverse(0));
+        assertTrue(match.isReverse(1));
+        assertTrue(loadedCache.get("long id ü", -7).isEmpty());
+
+        // a different graph
+        graph.edge(3, 4, 100, true);
+        assertNull(store.loadOverlay(graph));
+        assertEquals(0, store.loadMatches(new MatchCache(), graph));
+        store.close();
+    }
+
+    @Test
+    public void testSaveChanges() {
+        Graph graph = new GraphBuilder(new EncodingManager("car")).create();
+        graph.edge(0, 1, 100, true);
+        graph.edge(1, 2, 100, true);
+
+        EdgeUpdates first = new EdgeUpdates(1);
+        first.add(0, 20);
+        SpeedOverlay previous = SpeedOverlay.EMPTY.apply(first);
+        TrafficStore store = new TrafficStore(dir.getAbsolutePath());
+        store.saveOverlay(SpeedOverlay.EMPTY, previous, first, graph);
+
+        // changes one speed and adds edge keys
+        EdgeUpdates second = new EdgeUpdates(2);
+        second.add(0, 30);
+        second.add(3, 10);
+        SpeedOverlay next = previous.apply(second);
+        store.saveOverlay(previous, next, second, graph);
+        store.close();
+
+        store = new TrafficStore(dir.getAbsolutePath());
+        SpeedOverlay loaded = store.loadOverlay(graph);
+        assertEquals(next.getVersion(), loaded.getVersion());
+        assertEquals(4, loaded.size());
+        assertEquals(30, loaded.getSpeed(0), 1e-6);
+        assertFalse(loaded.hasSpeed(1));
+        assertFalse(loaded.hasSpeed(2));
+        assertEquals(10, loaded.getSpeed(3), 1e-6);
+
+        // the file does not hold the previous overlay, so everything is written
+        EdgeUpdates other = new EdgeUpdates(1);
+        other.add(1, 5);
+        SpeedOverlay unrelated = SpeedOverlay.EMPTY.apply(other).apply(other);
+        store.saveOverlay(SpeedOverlay.EMPTY.apply(other), unrelated, other, graph);
+        loaded = store.loadOverlay(graph);
+        assertEquals(2, loaded.size());
+        assertFalse(loaded.hasSpeed(0));
+        assertEquals(5, loaded.getSpeed(1), 1e-6);
+        store.close();
+    }
+}